@@ -0,0 +1,159 @@
+package src;
+
+public class AreaTemplate {
+    private static final double LINE_WIDTH = 1.0;
+    private static final double EPSILON = 1e-9;
+
+    public enum Shape {
+        SPHERE("Sphere"),
+        CONE("Cone"),
+        CUBE("Cube"),
+        LINE("Line");
+
+        private final String displayName;
+
+        Shape(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() { return displayName; }
+
+        @Override
+        public String toString() { return displayName; }
+    }
+
+    private final Shape shape;
+    private final double originX;
+    private final double originY;
+    private final double length;
+    private final double directionX;
+    private final double directionY;
+    private final double[] polygon;
+    private final double minX, minY, maxX, maxY;
+
+    public AreaTemplate(Shape shape, double originX, double originY, double length, double aimX, double aimY) {
+        this.shape = shape;
+        this.originX = originX;
+        this.originY = originY;
+        this.length = Math.max(0, length);
+
+        double dx = aimX - originX;
+        double dy = aimY - originY;
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        if (distance < EPSILON) {
+            dx = 1;
+            dy = 0;
+            distance = 1;
+        }
+        this.directionX = dx / distance;
+        this.directionY = dy / distance;
+        this.polygon = buildPolygon();
+
+        if (polygon == null) {
+            minX = originX - this.length;
+            minY = originY - this.length;
+            maxX = originX + this.length;
+            maxY = originY + this.length;
+        } else {
+            double left = Double.MAX_VALUE, top = Double.MAX_VALUE;
+            double right = -Double.MAX_VALUE, bottom = -Double.MAX_VALUE;
+            for (int i = 0; i < polygon.length; i += 2) {
+                left = Math.min(left, polygon[i]);
+                top = Math.min(top, polygon[i + 1]);
+                right = Math.max(right, polygon[i]);
+                bottom = Math.max(bottom, polygon[i + 1]);
+            }
+            minX = left;
+            minY = top;
+            maxX = right;
+            maxY = bottom;
+        }
+    }
+
+    private double[] buildPolygon() {
+        double perpX = -directionY;
+        double perpY = directionX;
+        switch (shape) {
+            case CONE: {
+                double endX = originX + directionX * length;
+                double endY = originY + directionY * length;
+                double half = length / 2;
+                return new double[] {
+                    originX, originY,
+                    endX + perpX * half, endY + perpY * half,
+                    endX - perpX * half, endY - perpY * half
+                };
+            }
+            case LINE: {
+                double endX = originX + directionX * length;
+                double endY = originY + directionY * length;
+                double half = LINE_WIDTH / 2;
+                return new double[] {
+                    originX + perpX * half, originY + perpY * half,
+                    endX + perpX * half, endY + perpY * half,
+                    endX - perpX * half, endY - perpY * half,
+                    originX - perpX * half, originY - perpY * half
+                };
+            }
+            case CUBE: {
+                double x = directionX >= 0 ? originX : originX - length;
+                double y = directionY >= 0 ? originY : originY - length;
+                return new double[] { x, y, x + length, y, x + length, y + length, x, y + length };
+            }
+            default:
+                return null;
+        }
+    }
+
+    public boolean intersectsRect(double left, double top, double right, double bottom) {
+        if (right <= minX || left >= maxX || bottom <= minY || top >= maxY) return false;
+
+        if (polygon == null) {
+            double nearestX = Math.max(left, Math.min(originX, right));
+            double nearestY = Math.max(top, Math.min(originY, bottom));
+            double dx = nearestX - originX;
+            double dy = nearestY - originY;
+            return dx * dx + dy * dy < length * length;
+        }
+
+        int n = polygon.length;
+        for (int i = 0; i < n; i += 2) {
+            int j = (i + 2) % n;
+            double axisX = -(polygon[j + 1] - polygon[i + 1]);
+            double axisY = polygon[j] - polygon[i];
+            if (separates(axisX, axisY, left, top, right, bottom)) return false;
+        }
+        return true;
+    }
+
+    private boolean separates(double axisX, double axisY, double left, double top, double right, double bottom) {
+        double polygonMin = Double.MAX_VALUE, polygonMax = -Double.MAX_VALUE;
+        for (int i = 0; i < polygon.length; i += 2) {
+            double projection = polygon[i] * axisX + polygon[i + 1] * axisY;
+            polygonMin = Math.min(polygonMin, projection);
+            polygonMax = Math.max(polygonMax, projection);
+        }
+
+        double rectMin = Double.MAX_VALUE, rectMax = -Double.MAX_VALUE;
+        double[] xs = { left, right };
+        double[] ys = { top, bottom };
+        for (double x : xs) {
+            for (double y : ys) {
+                double projection = x * axisX + y * axisY;
+                rectMin = Math.min(rectMin, projection);
+                rectMax = Math.max(rectMax, projection);
+            }
+        }
+        return polygonMax <= rectMin + EPSILON || rectMax <= polygonMin + EPSILON;
+    }
+
+    public Shape getShape() { return shape; }
+    public double getOriginX() { return originX; }
+    public double getOriginY() { return originY; }
+    public double getLength() { return length; }
+    public double[] getPolygon() { return polygon; }
+    public double getMinX() { return minX; }
+    public double getMinY() { return minY; }
+    public double getMaxX() { return maxX; }
+    public double getMaxY() { return maxY; }
+}
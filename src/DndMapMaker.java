@@ -1,6 +1,7 @@
 package src;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.ToolBar;
@@ -8,6 +9,7 @@ import javafx.scene.control.ComboBox;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
+import javafx.scene.control.Spinner;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
@@ -16,6 +18,7 @@ import javafx.scene.layout.Region;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.scene.control.TextInputDialog;
+import javafx.scene.control.Alert;
 
 import java.io.File;
 import java.io.IOException;
@@ -24,6 +27,7 @@ import java.util.Set;
 
 public class DndMapMaker extends Application {
     private MapCanvas mapCanvas;
+    private Runnable refreshLayerPanel = () -> {};
 
     @Override
     public void start(Stage stage) {
@@ -61,16 +65,50 @@ public class DndMapMaker extends Application {
         });
         toolbar.getItems().add(editTokenButton);
 
+        Button aoeButton = new Button("AoE");
+        aoeButton.setOnAction(e -> mapCanvas.setMode(MapCanvas.Mode.AOE));
+        toolbar.getItems().add(aoeButton);
+
+        ComboBox<AreaTemplate.Shape> aoeShapeCombo = new ComboBox<>();
+        aoeShapeCombo.getItems().addAll(AreaTemplate.Shape.values());
+        aoeShapeCombo.setValue(AreaTemplate.Shape.SPHERE);
+        aoeShapeCombo.setOnAction(e -> mapCanvas.setAoeShape(aoeShapeCombo.getValue()));
+        toolbar.getItems().add(aoeShapeCombo);
+
+        Spinner<Integer> aoeSizeSpinner = new Spinner<>(5, 300, 20, 5);
+        aoeSizeSpinner.setPrefWidth(80);
+        aoeSizeSpinner.valueProperty().addListener((obs, oldVal, newVal) -> mapCanvas.setAoeSize(newVal));
+        toolbar.getItems().add(aoeSizeSpinner);
+
+        CheckBox aoeWallsCheckBox = new CheckBox("Walls Block");
+        aoeWallsCheckBox.setSelected(true);
+        aoeWallsCheckBox.setOnAction(e -> mapCanvas.setAoeBlockedByWalls(aoeWallsCheckBox.isSelected()));
+        toolbar.getItems().add(aoeWallsCheckBox);
+
+        CheckBox fogCheckBox = new CheckBox("Fog of War");
+        fogCheckBox.setOnAction(e -> mapCanvas.setFogEnabled(fogCheckBox.isSelected()));
+        toolbar.getItems().add(fogCheckBox);
+
+        Button resetFogButton = new Button("Reset Fog");
+        resetFogButton.setOnAction(e -> mapCanvas.resetFog());
+        toolbar.getItems().add(resetFogButton);
+
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
         toolbar.getItems().add(spacer);
 
         Button undoButton = new Button("Undo");
-        undoButton.setOnAction(e -> mapCanvas.undo());
+        undoButton.setOnAction(e -> {
+            mapCanvas.undo();
+            refreshLayerPanel.run();
+        });
         toolbar.getItems().add(undoButton);
         
         Button redoButton = new Button("Redo");
-        redoButton.setOnAction(e -> mapCanvas.redo());
+        redoButton.setOnAction(e -> {
+            mapCanvas.redo();
+            refreshLayerPanel.run();
+        });
         toolbar.getItems().add(redoButton);
         Button saveButton = new Button("Save");
         saveButton.setOnAction(e -> saveMap(stage));
@@ -80,6 +118,10 @@ public class DndMapMaker extends Application {
         loadButton.setOnAction(e -> loadMap(stage));
         toolbar.getItems().add(loadButton);
 
+        Button exportButton = new Button("Export PNG");
+        exportButton.setOnAction(e -> exportMap(stage, exportButton));
+        toolbar.getItems().add(exportButton);
+
         VBox layerPanel = createLayerPanel();
         System.out.println("Side panel created, width: " + layerPanel.getPrefWidth());
 
@@ -124,7 +166,7 @@ public class DndMapMaker extends Application {
         File file = fileChooser.showSaveDialog(stage);
         if (file != null) {
             try {
-                MapIO.saveMap(mapCanvas.getWalls(), mapCanvas.getTokens(), mapCanvas.getBlackOverlays(), file);
+                MapIO.saveMap(mapCanvas.getWallStore(), mapCanvas.getTokens(), mapCanvas.getBlackOverlays(), file);
             } catch (IOException ex) {
                 ex.printStackTrace();
             }
@@ -147,16 +189,85 @@ public class DndMapMaker extends Application {
                 }
                 if (mapData.tokens != null) {
                     mapCanvas.setTokens(mapData.tokens);
+                    refreshLayerPanel.run();
                 }
                 if (mapData.blackOverlays != null) {
                     mapCanvas.setBlackOverlays(mapData.blackOverlays);
                 }
+                mapCanvas.resetFog();
             } catch (IOException ex) {
                 ex.printStackTrace();
             }
         }
     }
 
+    private void exportMap(Stage stage, Button exportButton) {
+        TextInputDialog dialog = new TextInputDialog("64");
+        dialog.setTitle("Export PNG");
+        dialog.setHeaderText("Enter pixels per grid square:");
+        dialog.setContentText("Pixels:");
+
+        Optional<String> result = dialog.showAndWait();
+        if (!result.isPresent()) return;
+
+        int pixelsPerCell;
+        try {
+            pixelsPerCell = Integer.parseInt(result.get().trim());
+        } catch (NumberFormatException ex) {
+            showExportAlert(Alert.AlertType.ERROR, "Pixels per grid square must be a whole number.");
+            return;
+        }
+        if (pixelsPerCell < 1 || pixelsPerCell > 512) {
+            showExportAlert(Alert.AlertType.ERROR, "Pixels per grid square must be between 1 and 512.");
+            return;
+        }
+
+        MapExporter exporter;
+        try {
+            exporter = mapCanvas.createExporter(pixelsPerCell);
+        } catch (IllegalArgumentException ex) {
+            showExportAlert(Alert.AlertType.ERROR, ex.getMessage());
+            return;
+        }
+        if (exporter == null) {
+            showExportAlert(Alert.AlertType.INFORMATION, "The map is empty.");
+            return;
+        }
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export Map");
+        fileChooser.getExtensionFilters().add(
+            new FileChooser.ExtensionFilter("PNG Images", "*.png")
+        );
+
+        File file = fileChooser.showSaveDialog(stage);
+        if (file == null) return;
+
+        exportButton.setDisable(true);
+        Thread thread = new Thread(() -> {
+            try {
+                exporter.export(file, null);
+                Platform.runLater(() -> showExportAlert(Alert.AlertType.INFORMATION,
+                        "Exported " + exporter.getWidth() + " x " + exporter.getHeight() + " image to " + file.getName()));
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                Platform.runLater(() -> showExportAlert(Alert.AlertType.ERROR, "Export failed: " + ex.getMessage()));
+            } finally {
+                Platform.runLater(() -> exportButton.setDisable(false));
+            }
+        }, "map-export-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void showExportAlert(Alert.AlertType type, String message) {
+        Alert alert = new Alert(type);
+        alert.setTitle("Export PNG");
+        alert.setHeaderText(null);
+        alert.setContentText(message);
+        alert.showAndWait();
+    }
+
     private VBox createLayerPanel() {
         VBox layerPanel = new VBox(10);
         layerPanel.setPrefWidth(200);
@@ -207,6 +318,7 @@ public class DndMapMaker extends Application {
         layerPanel.getChildren().add(addLayerButton);
 
         updateLayerList(layerList, currentLayerCombo);
+        refreshLayerPanel = () -> updateLayerList(layerList, currentLayerCombo);
 
         Region spacer = new Region();
         VBox.setVgrow(spacer, Priority.ALWAYS);
@@ -251,6 +363,7 @@ public class DndMapMaker extends Application {
             
             Button removeButton = new Button("×");
             removeButton.setPrefWidth(30);
+            removeButton.setDisable(layerName.equals("Default"));
             removeButton.setOnAction(e -> {
                 mapCanvas.removeLayer(layerName);
                 updateLayerList(layerList, currentLayerCombo);
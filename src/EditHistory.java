@@ -0,0 +1,50 @@
+package src;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+public class EditHistory {
+    public interface Command {
+        void undo();
+        void redo();
+    }
+
+    private final int limit;
+    private final Deque<Command> undoStack = new ArrayDeque<>();
+    private final Deque<Command> redoStack = new ArrayDeque<>();
+
+    public EditHistory(int limit) {
+        this.limit = limit;
+    }
+
+    public void record(Command command) {
+        undoStack.push(command);
+        redoStack.clear();
+        while (undoStack.size() > limit) {
+            undoStack.removeLast();
+        }
+    }
+
+    public boolean undo() {
+        Command command = undoStack.poll();
+        if (command == null) return false;
+
+        command.undo();
+        redoStack.push(command);
+        return true;
+    }
+
+    public boolean redo() {
+        Command command = redoStack.poll();
+        if (command == null) return false;
+
+        command.redo();
+        undoStack.push(command);
+        return true;
+    }
+
+    public void clear() {
+        undoStack.clear();
+        redoStack.clear();
+    }
+}
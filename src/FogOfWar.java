@@ -0,0 +1,278 @@
+package src;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class FogOfWar {
+    public static final int TILE_SIZE = 128;
+    private static final int WORD_BITS = 64;
+    private static final int HIDDEN_COLOR = 0xF0202020;
+    private static final int EXPLORED_COLOR = 0x80000000;
+    private static final int VISIBLE_COLOR = 0x00000000;
+    private static final Color HIDDEN_FILL = Color.rgb(0x20, 0x20, 0x20, 0xF0 / 255.0);
+
+    // Tiles are only allocated once a visibility polygon reaches them; every
+    // cell outside the allocated tiles is hidden.
+    private final Map<Long, Tile> tiles = new HashMap<>();
+    private Map<double[], int[]> sources = new IdentityHashMap<>();
+    private final long[] previousRow = new long[TILE_SIZE / WORD_BITS];
+    private double[] crossings = new double[16];
+    private long changedCells = 0;
+
+    public boolean update(List<double[]> polygons) {
+        Map<double[], int[]> next = new IdentityHashMap<>();
+        List<int[]> dirty = new ArrayList<>();
+        for (double[] polygon : polygons) {
+            if (polygon.length < 6 || next.containsKey(polygon)) continue;
+
+            int[] bounds = sources.get(polygon);
+            if (bounds == null) {
+                bounds = getBounds(polygon);
+                dirty.add(bounds);
+            }
+            next.put(polygon, bounds);
+        }
+        for (Map.Entry<double[], int[]> entry : sources.entrySet()) {
+            if (!next.containsKey(entry.getKey())) {
+                dirty.add(entry.getValue());
+            }
+        }
+        sources = next;
+
+        changedCells = 0;
+        for (int[] region : mergeRegions(dirty)) {
+            refresh(region[0], region[1], region[2], region[3]);
+        }
+        return changedCells > 0;
+    }
+
+    public void reset() {
+        tiles.clear();
+        sources = new IdentityHashMap<>();
+    }
+
+    public boolean isVisible(int x, int y) {
+        Tile tile = tiles.get(key(Math.floorDiv(x, TILE_SIZE), Math.floorDiv(y, TILE_SIZE)));
+        return tile != null && tile.visible.get(Math.floorMod(x, TILE_SIZE), Math.floorMod(y, TILE_SIZE));
+    }
+
+    public boolean isExplored(int x, int y) {
+        Tile tile = tiles.get(key(Math.floorDiv(x, TILE_SIZE), Math.floorDiv(y, TILE_SIZE)));
+        return tile != null && tile.explored.get(Math.floorMod(x, TILE_SIZE), Math.floorMod(y, TILE_SIZE));
+    }
+
+    public void draw(GraphicsContext gc, double left, double top, double right, double bottom, double cellSize) {
+        int tileLeft = (int) Math.floor(left / TILE_SIZE);
+        int tileTop = (int) Math.floor(top / TILE_SIZE);
+        int tileRight = (int) Math.floor(right / TILE_SIZE);
+        int tileBottom = (int) Math.floor(bottom / TILE_SIZE);
+
+        List<Tile> inView = new ArrayList<>();
+        for (Tile tile : tiles.values()) {
+            if (tile.x >= tileLeft && tile.x <= tileRight && tile.y >= tileTop && tile.y <= tileBottom) {
+                inView.add(tile);
+            }
+        }
+        inView.sort(Comparator.comparingInt((Tile tile) -> tile.y).thenComparingInt(tile -> tile.x));
+
+        double tilePixels = TILE_SIZE * cellSize;
+        gc.setFill(HIDDEN_FILL);
+        int index = 0;
+        int row = tileTop;
+        while (row <= tileBottom) {
+            if (index == inView.size() || inView.get(index).y > row) {
+                int nextRow = index == inView.size() ? tileBottom + 1 : inView.get(index).y;
+                gc.fillRect(tileLeft * tilePixels, row * tilePixels,
+                            (tileRight + 1 - tileLeft) * tilePixels, (nextRow - row) * tilePixels);
+                row = nextRow;
+                continue;
+            }
+
+            int column = tileLeft;
+            while (index < inView.size() && inView.get(index).y == row) {
+                Tile tile = inView.get(index++);
+                if (tile.x > column) {
+                    gc.fillRect(column * tilePixels, row * tilePixels, (tile.x - column) * tilePixels, tilePixels);
+                }
+                gc.drawImage(tile.image, tile.x * tilePixels, row * tilePixels, tilePixels, tilePixels);
+                column = tile.x + 1;
+            }
+            if (column <= tileRight) {
+                gc.fillRect(column * tilePixels, row * tilePixels, (tileRight + 1 - column) * tilePixels, tilePixels);
+            }
+            row++;
+        }
+    }
+
+    private void refresh(int x0, int y0, int x1, int y1) {
+        for (int ty = Math.floorDiv(y0, TILE_SIZE); ty <= Math.floorDiv(y1 - 1, TILE_SIZE); ty++) {
+            for (int tx = Math.floorDiv(x0, TILE_SIZE); tx <= Math.floorDiv(x1 - 1, TILE_SIZE); tx++) {
+                int left = Math.max(x0, tx * TILE_SIZE);
+                int top = Math.max(y0, ty * TILE_SIZE);
+                int right = Math.min(x1, (tx + 1) * TILE_SIZE);
+                int bottom = Math.min(y1, (ty + 1) * TILE_SIZE);
+
+                long key = key(tx, ty);
+                Tile tile = tiles.get(key);
+                if (tile == null) {
+                    if (!hasSourceIn(left, top, right, bottom)) continue;
+
+                    tile = new Tile(tx, ty);
+                    tiles.put(key, tile);
+                }
+                refreshTile(tile, left, top, right, bottom);
+            }
+        }
+    }
+
+    private boolean hasSourceIn(int x0, int y0, int x1, int y1) {
+        for (int[] bounds : sources.values()) {
+            if (bounds[0] < x1 && bounds[2] > x0 && bounds[1] < y1 && bounds[3] > y0) return true;
+        }
+        return false;
+    }
+
+    private void refreshTile(Tile tile, int x0, int y0, int x1, int y1) {
+        int originX = tile.x * TILE_SIZE;
+        int originY = tile.y * TILE_SIZE;
+        int localX0 = x0 - originX;
+        int localX1 = x1 - originX;
+        int firstWord = localX0 / WORD_BITS;
+        int lastWord = (localX1 - 1) / WORD_BITS;
+
+        PixelWriter writer = tile.image.getPixelWriter();
+        for (int y = y0 - originY; y < y1 - originY; y++) {
+            for (int w = firstWord; w <= lastWord; w++) {
+                previousRow[w] = tile.visible.getWord(y, w);
+            }
+            tile.visible.clearRect(localX0, y, localX1, y + 1);
+            for (Map.Entry<double[], int[]> entry : sources.entrySet()) {
+                int[] bounds = entry.getValue();
+                int worldY = y + originY;
+                if (worldY < bounds[1] || worldY >= bounds[3] || bounds[2] <= x0 || bounds[0] >= x1) continue;
+                fillRow(entry.getKey(), tile, y, localX0, localX1);
+            }
+
+            for (int w = firstWord; w <= lastWord; w++) {
+                long now = tile.visible.getWord(y, w);
+                long seen = tile.explored.getWord(y, w) | now;
+                long changed = (now ^ previousRow[w]) & OccupancyGrid.wordMask(w, localX0, localX1);
+                tile.explored.setWord(y, w, seen);
+
+                while (changed != 0) {
+                    int bit = Long.numberOfTrailingZeros(changed);
+                    changed &= changed - 1;
+                    long cell = 1L << bit;
+                    int color = (now & cell) != 0 ? VISIBLE_COLOR : EXPLORED_COLOR;
+                    writer.setArgb(w * WORD_BITS + bit, y, color);
+                    changedCells++;
+                }
+            }
+        }
+    }
+
+    private void fillRow(double[] polygon, Tile tile, int y, int x0, int x1) {
+        int originX = tile.x * TILE_SIZE;
+        double sampleY = tile.y * TILE_SIZE + y + 0.5;
+        int count = 0;
+        int n = polygon.length;
+        for (int i = 0, j = n - 2; i < n; j = i, i += 2) {
+            double yi = polygon[i + 1];
+            double yj = polygon[j + 1];
+            if ((yi <= sampleY) == (yj <= sampleY)) continue;
+
+            if (count == crossings.length) {
+                crossings = Arrays.copyOf(crossings, count * 2);
+            }
+            double xi = polygon[i] - originX;
+            crossings[count++] = xi + (sampleY - yi) * (polygon[j] - originX - xi) / (yj - yi);
+        }
+        Arrays.sort(crossings, 0, count);
+
+        for (int i = 0; i + 1 < count; i += 2) {
+            int start = Math.max(x0, (int) Math.ceil(crossings[i] - 0.5));
+            int end = Math.min(x1, (int) Math.floor(crossings[i + 1] - 0.5) + 1);
+            if (start < end) {
+                tile.visible.fillRect(start, y, end, y + 1);
+            }
+        }
+    }
+
+    private static int[] getBounds(double[] polygon) {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < polygon.length; i += 2) {
+            minX = Math.min(minX, polygon[i]);
+            minY = Math.min(minY, polygon[i + 1]);
+            maxX = Math.max(maxX, polygon[i]);
+            maxY = Math.max(maxY, polygon[i + 1]);
+        }
+        return new int[] {
+            (int) Math.floor(minX),
+            (int) Math.floor(minY),
+            (int) Math.ceil(maxX) + 1,
+            (int) Math.ceil(maxY) + 1
+        };
+    }
+
+    private List<int[]> mergeRegions(List<int[]> regions) {
+        List<int[]> merged = new ArrayList<>();
+        for (int[] region : regions) {
+            if (region[0] >= region[2] || region[1] >= region[3]) continue;
+
+            int[] current = region.clone();
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                for (int i = merged.size() - 1; i >= 0; i--) {
+                    int[] other = merged.get(i);
+                    if (other[0] < current[2] && other[2] > current[0] &&
+                        other[1] < current[3] && other[3] > current[1]) {
+                        current[0] = Math.min(current[0], other[0]);
+                        current[1] = Math.min(current[1], other[1]);
+                        current[2] = Math.max(current[2], other[2]);
+                        current[3] = Math.max(current[3], other[3]);
+                        merged.remove(i);
+                        grew = true;
+                    }
+                }
+            }
+            merged.add(current);
+        }
+        return merged;
+    }
+
+    private static long key(int tileX, int tileY) {
+        return ((long) tileX << 32) | (tileY & 0xFFFFFFFFL);
+    }
+
+    private static class Tile {
+        final int x;
+        final int y;
+        final OccupancyGrid visible = new OccupancyGrid(TILE_SIZE, TILE_SIZE);
+        final OccupancyGrid explored = new OccupancyGrid(TILE_SIZE, TILE_SIZE);
+        final WritableImage image = new WritableImage(TILE_SIZE, TILE_SIZE);
+
+        Tile(int x, int y) {
+            this.x = x;
+            this.y = y;
+            int[] row = new int[TILE_SIZE];
+            Arrays.fill(row, HIDDEN_COLOR);
+            PixelWriter writer = image.getPixelWriter();
+            for (int r = 0; r < TILE_SIZE; r++) {
+                writer.setPixels(0, r, TILE_SIZE, 1, PixelFormat.getIntArgbInstance(), row, 0, TILE_SIZE);
+            }
+        }
+    }
+}
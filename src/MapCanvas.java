@@ -2,24 +2,61 @@ package src;
 
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.image.Image;
+import src.RenderScheduler.Layer;
 
 import java.awt.Point;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Stack;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.TreeSet;
 
-public class MapCanvas extends Canvas {
+public class MapCanvas extends Pane {
     private static final int GRID_SIZE = 32;
+    private static final double MIN_GRID_SPACING = 8.0;
+    private static final int MAX_GRID_STEP = 1 << 12;
+    private static final double FULL_DETAIL_PIXELS = 12.0;
+    private static final double SIMPLE_DETAIL_PIXELS = 3.0;
+    private static final double DENSITY_BLOCK_PIXELS = 12.0;
+    private static final double MAX_CHUNKED_PIXELS = 64.0;
+    private static final double CHUNK_MARGIN = 0.1;
+    private static final int MAX_HISTORY = 1000;
     
-    private List<Wall> walls = new ArrayList<>();
+    private final Canvas backgroundLayer = new Canvas();
+    private final Canvas tokenLayer = new Canvas();
+    private final Canvas interactionLayer = new Canvas();
+
+    private final WallStore walls = new WallStore();
     private List<Token> tokens = new ArrayList<>();
-    private List<Wall> blackOverlays = new ArrayList<>();
+    private Set<Wall> blackOverlays = new LinkedHashSet<>();
+    private final WallConnectivity wallConnectivity = new WallConnectivity(walls);
+    private final WallOutlineCache outlineCache = new WallOutlineCache();
+    private final RectIndex overlayIndex = new RectIndex(Wall.CONNECTIVITY_CELL_SIZE);
+    private final OverlayCoverage overlayCoverage = new OverlayCoverage(overlayIndex, Wall.CONNECTIVITY_CELL_SIZE);
+    private final MapChunkCache chunkCache = new MapChunkCache(GRID_SIZE, this::drawStaticContent);
+    private final VisibilityEngine visibilityEngine = new VisibilityEngine();
+    private final FogOfWar fogOfWar = new FogOfWar();
+    private boolean fogEnabled = false;
+    private final PathFinder pathFinder = new PathFinder(walls);
+    private final RenderScheduler renderScheduler = new RenderScheduler(this::render);
+    private final MovementRange movementRange =
+            new MovementRange(wallConnectivity, () -> renderScheduler.request(Layer.TOKENS));
+    private Token rangeToken = null;
+    private final TokenIndex tokenIndex = new TokenIndex(Wall.CONNECTIVITY_CELL_SIZE);
+    private AreaTemplate.Shape aoeShape = AreaTemplate.Shape.SPHERE;
+    private int aoeSizeFeet = 20;
+    private boolean aoeBlockedByWalls = true;
+    private AreaTemplate aoeTemplate = null;
+    private boolean isAimingTemplate = false;
+    private double aoeOriginX, aoeOriginY;
+    private double aoeDirectionX = 1, aoeDirectionY = 0;
+    private final List<Token> aoeHits = new ArrayList<>();
     private Mode currentMode = Mode.WALL;
     private Token.Type selectedTokenType = Token.Type.PLAYER;
 
@@ -32,22 +69,34 @@ public class MapCanvas extends Canvas {
     private double dragEndX, dragEndY;
     private Token selectedToken = null;
     private boolean isDraggingToken = false;
+    private double tokenStartX, tokenStartY;
+    private int pathTargetX, pathTargetY;
+    private boolean hasTokenPath = false;
     private List<String> layerOrder = new ArrayList<>();
     private Set<String> visibleLayers = new HashSet<>();
     private String currentLayerCategory = "Default";
 
-    private Stack<MapState> undoStack = new Stack<>();
-    private Stack<MapState> redoStack = new Stack<>();
+    private final EditHistory history = new EditHistory(MAX_HISTORY);
+    private Token.State tokenStartState;
     
     public enum Mode {
-        WALL, ERASER, TOKEN, SELECT, BLACK_OVERLAY, LAYER
+        WALL, ERASER, TOKEN, SELECT, BLACK_OVERLAY, LAYER, AOE
+    }
+
+    private enum Detail {
+        FULL, SIMPLE, DENSITY
     }
     
     public MapCanvas() {
         layerOrder.add("Default");
         visibleLayers.add("Default");
+        for (Canvas layer : new Canvas[] { backgroundLayer, tokenLayer, interactionLayer }) {
+            layer.setMouseTransparent(true);
+            getChildren().add(layer);
+        }
         setupMouseHandlers();
-        draw();
+        TokenImageCache.shared().addLoadListener(() -> renderScheduler.request(Layer.TOKENS));
+        renderScheduler.requestAll();
     }
     
     private void setupMouseHandlers() {
@@ -62,7 +111,7 @@ public class MapCanvas extends Canvas {
             offsetY = (offsetY - mouseY) * zoomFactor + mouseY;
             zoom *= zoomFactor;
             
-            draw();
+            renderScheduler.requestAll();
         });
 
         setOnMousePressed(e -> {
@@ -74,20 +123,37 @@ public class MapCanvas extends Canvas {
                 else if (currentMode == Mode.SELECT) {
                     Point gridPos = screenToGrid(e.getX(), e.getY());
                     Token clickedToken = getTokenAt(gridPos);
+                    rangeToken = clickedToken;
                     if (clickedToken != null) {
                         selectedToken = clickedToken;
                         isDraggingToken = true;
+                        tokenStartX = clickedToken.getExactX();
+                        tokenStartY = clickedToken.getExactY();
+                        tokenStartState = clickedToken.captureState();
+                        hasTokenPath = false;
                     }
                 }
                 else if (currentMode == Mode.LAYER) {
                     Point gridPos = screenToGrid(e.getX(), e.getY());
                     Token clickedToken = getTokenAt(gridPos);
                     if (clickedToken != null) {
+                        Token.State before = clickedToken.captureState();
                         clickedToken.setLayerCategory(currentLayerCategory);
+                        tokenIndex.update(clickedToken);
+                        recordTokenEdit(clickedToken, before);
                         System.out.println("Set " + clickedToken.getName() + " to layer: " + currentLayerCategory);
-                        draw();
+                        renderScheduler.request(Layer.TOKENS);
                     }
                 }
+                else if (currentMode == Mode.AOE) {
+                    double worldX = (e.getX() - offsetX) / zoom;
+                    double worldY = (e.getY() - offsetY) / zoom;
+                    aoeOriginX = Math.round(worldX / GRID_SIZE);
+                    aoeOriginY = Math.round(worldY / GRID_SIZE);
+                    isAimingTemplate = true;
+                    updateTemplate();
+                    renderScheduler.request(Layer.PREVIEW);
+                }
                 else {
                     double worldX = (e.getX() - offsetX) / zoom;
                     double worldY = (e.getY() - offsetY) / zoom;
@@ -112,7 +178,21 @@ public class MapCanvas extends Canvas {
                 double gridY = worldY / GRID_SIZE;
 
                 selectedToken.setExactPosition(gridX, gridY);
-                draw();
+                tokenIndex.update(selectedToken);
+                updateTokenPath(gridX, gridY);
+                renderScheduler.request(Layer.TOKENS, Layer.PREVIEW);
+            }
+            else if (isAimingTemplate) {
+                double worldX = (e.getX() - offsetX) / zoom;
+                double worldY = (e.getY() - offsetY) / zoom;
+                double dx = worldX / GRID_SIZE - aoeOriginX;
+                double dy = worldY / GRID_SIZE - aoeOriginY;
+                if (Math.abs(dx) > 0.01 || Math.abs(dy) > 0.01) {
+                    aoeDirectionX = dx;
+                    aoeDirectionY = dy;
+                    updateTemplate();
+                    renderScheduler.request(Layer.PREVIEW);
+                }
             }
             else if (isDragging && e.isPrimaryButtonDown() && currentMode != Mode.TOKEN) {
                 double worldX = (e.getX() - offsetX) / zoom;
@@ -122,20 +202,45 @@ public class MapCanvas extends Canvas {
                 
                 dragEndX = gridX;
                 dragEndY = gridY;
-                draw();
+                renderScheduler.request(Layer.PREVIEW);
+            }
+        });
+
+        setOnMouseMoved(e -> {
+            if (currentMode == Mode.AOE && !isAimingTemplate) {
+                double worldX = (e.getX() - offsetX) / zoom;
+                double worldY = (e.getY() - offsetY) / zoom;
+                double originX = Math.round(worldX / GRID_SIZE);
+                double originY = Math.round(worldY / GRID_SIZE);
+                if (aoeTemplate == null || originX != aoeOriginX || originY != aoeOriginY) {
+                    aoeOriginX = originX;
+                    aoeOriginY = originY;
+                    updateTemplate();
+                    renderScheduler.request(Layer.PREVIEW);
+                }
             }
         });
 
         setOnMouseReleased(e -> {
+            isAimingTemplate = false;
             if (isDraggingToken) {
                 isDraggingToken = false;
+                if (selectedToken != null) {
+                    recordTokenEdit(selectedToken, tokenStartState);
+                }
+                tokenStartState = null;
                 selectedToken = null;
+                hasTokenPath = false;
+                renderScheduler.request(Layer.TOKENS, Layer.PREVIEW);
             }
             else if (isDragging) {
+                isDragging = false;
                 if (Math.abs(dragEndX - dragStartX) > 0.1 || Math.abs(dragEndY - dragStartY) > 0.1) {
                     createWall();
                 }
-                isDragging = false;
+                else if (currentMode == Mode.ERASER) {
+                    eraseArea(new Wall(Math.floor(dragStartX), Math.floor(dragStartY), 1, 1));
+                }
             }
         });
 
@@ -159,8 +264,6 @@ public class MapCanvas extends Canvas {
     }
     
     private void createWall() {
-        saveState();
-        
         double x = Math.min(dragStartX, dragEndX);
         double y = Math.min(dragStartY, dragEndY);
         double width = Math.abs(dragEndX - dragStartX);
@@ -169,50 +272,116 @@ public class MapCanvas extends Canvas {
         if (width < 0.1) width = 0.1;
         if (height < 0.1) height = 0.1;
         
+        if (currentMode == Mode.ERASER) {
+            eraseArea(new Wall(x, y, width, height));
+            return;
+        }
+        
+        MapEdit edit = new MapEdit(new Wall(x, y, width, height));
         if (currentMode == Mode.WALL) {
-            Wall newWall = new Wall(x, y, width, height);
-            walls.add(newWall);
+            int wallId = walls.add(x, y, width, height);
+            wallConnectivity.addWall(wallId);
+            edit.addedWalls.add(wallRecord(wallId));
         } else if (currentMode == Mode.BLACK_OVERLAY) {
             Wall newOverlay = new Wall(x, y, width, height);
             blackOverlays.add(newOverlay);
+            overlayIndex.add(newOverlay);
+            overlayCoverage.add(newOverlay);
+            edit.addedOverlays.add(newOverlay);
         }
+        history.record(edit);
+        invalidateChunks(x, y, x + width, y + height);
         
-        draw();
+        renderScheduler.request(Layer.WALLS, Layer.OVERLAYS, Layer.PREVIEW);
     }
     
-    private List<Wall.WallSegment> createShapeOutline() {
-        if (walls.isEmpty()) {
-            return new ArrayList<>();
+    private void eraseArea(Wall area) {
+        int[] erasedWalls = wallConnectivity.findOverlapping(area);
+        List<Wall> erasedOverlays = overlayIndex.findOverlapping(area);
+        if (erasedWalls.length == 0 && erasedOverlays.isEmpty()) {
+            return;
         }
-
-        List<Wall.WallSegment> outline = new ArrayList<>();
-        for (Wall wall : walls) {
-            outline.addAll(wall.getOutlineSegments());
+        
+        MapEdit edit = new MapEdit(area);
+        invalidateChunks(area.getLeft(), area.getTop(), area.getRight(), area.getBottom());
+        
+        List<Wall> remainders = new ArrayList<>();
+        for (int wallId : erasedWalls) {
+            remainders.addAll(walls.toWall(wallId).subtract(area));
+            edit.removedWalls.add(wallRecord(wallId));
+            walls.remove(wallId);
+        }
+        wallConnectivity.removeWalls(erasedWalls);
+        for (Wall remainder : remainders) {
+            int remainderId = walls.add(remainder);
+            wallConnectivity.addWall(remainderId);
+            edit.addedWalls.add(wallRecord(remainderId));
         }
         
-        System.out.println("Created outline with " + outline.size() + " segments from " + walls.size() + " walls");
-        return outline;
+        if (!erasedOverlays.isEmpty()) {
+            for (Wall overlay : erasedOverlays) {
+                blackOverlays.remove(overlay);
+                overlayIndex.remove(overlay);
+                overlayCoverage.remove(overlay);
+                edit.removedOverlays.add(overlay);
+                for (Wall remainder : overlay.subtract(area)) {
+                    blackOverlays.add(remainder);
+                    overlayIndex.add(remainder);
+                    overlayCoverage.add(remainder);
+                    edit.addedOverlays.add(remainder);
+                }
+            }
+        }
+        
+        history.record(edit);
+        renderScheduler.request(Layer.WALLS, Layer.OVERLAYS);
+    }
+
+    private double[] wallRecord(int id) {
+        return new double[] { id, walls.getLeft(id), walls.getTop(id),
+                              walls.getRight(id) - walls.getLeft(id), walls.getBottom(id) - walls.getTop(id) };
     }
     
+    private void invalidateChunks(double left, double top, double right, double bottom) {
+        chunkCache.invalidate(left - CHUNK_MARGIN, top - CHUNK_MARGIN, right + CHUNK_MARGIN, bottom + CHUNK_MARGIN);
+    }
+
     private void placeToken(Point gridPos) {
-        saveState();
-        
         String tokenName = selectedTokenType.getDisplayName() + " " + (tokens.size() + 1);
         Token newToken = new Token(gridPos, selectedTokenType, tokenName, 1);
 
         newToken.setLayerCategory(currentLayerCategory);
         
         tokens.add(newToken);
+        tokenIndex.add(newToken);
 
-        editToken(newToken);
+        showTokenEditor(newToken);
+        history.record(new TokenPlacement(newToken));
         
-        draw();
+        renderScheduler.request(Layer.TOKENS);
     }
     
     private void editToken(Token token) {
+        Token.State before = token.captureState();
+        if (showTokenEditor(token)) {
+            recordTokenEdit(token, before);
+        }
+    }
+
+    private boolean showTokenEditor(Token token) {
         TokenEditor editor = new TokenEditor(token, this);
         if (editor.showAndWait()) {
-            draw();
+            tokenIndex.update(token);
+            renderScheduler.request(Layer.TOKENS);
+            return true;
+        }
+        return false;
+    }
+
+    private void recordTokenEdit(Token token, Token.State before) {
+        Token.State after = token.captureState();
+        if (before != null && !before.equals(after)) {
+            history.record(new TokenEdit(token, before, after));
         }
     }
     
@@ -230,138 +399,274 @@ public class MapCanvas extends Canvas {
         return null;
     }
     
-    private void saveState() {
-        MapState currentState = new MapState(new ArrayList<>(walls), new ArrayList<>(tokens), new ArrayList<>(blackOverlays));
-        undoStack.push(currentState);
-        redoStack.clear();
-    }
-    
     public void undo() {
-        if (!undoStack.isEmpty()) {
-            MapState currentState = new MapState(new ArrayList<>(walls), new ArrayList<>(tokens), new ArrayList<>(blackOverlays));
-            redoStack.push(currentState);
-            
-            MapState previousState = undoStack.pop();
-            walls = previousState.walls;
-            tokens = previousState.tokens;
-            blackOverlays = previousState.blackOverlays;
-            draw();
-        }
+        if (isDraggingToken) return;
+        history.undo();
     }
     
     public void redo() {
-        if (!redoStack.isEmpty()) {
-            MapState currentState = new MapState(new ArrayList<>(walls), new ArrayList<>(tokens), new ArrayList<>(blackOverlays));
-            undoStack.push(currentState);
-            
-            MapState nextState = redoStack.pop();
-            walls = nextState.walls;
-            tokens = nextState.tokens;
-            blackOverlays = nextState.blackOverlays;
-            draw();
-        }
+        if (isDraggingToken) return;
+        history.redo();
     }
     
-    private void draw() {
-        GraphicsContext gc = getGraphicsContext2D();
-        gc.clearRect(0, 0, getWidth(), getHeight());
-        
+    private void render(Set<Layer> dirty) {
+        if (dirty.contains(Layer.BACKGROUND) || dirty.contains(Layer.WALLS) || dirty.contains(Layer.OVERLAYS)) {
+            renderBackground();
+        }
+        if (dirty.contains(Layer.TOKENS) || dirty.contains(Layer.WALLS)) {
+            renderTokens();
+        }
+        if (dirty.contains(Layer.PREVIEW)) {
+            renderInteraction();
+        }
+    }
+
+    private GraphicsContext beginLayer(Canvas layer) {
+        GraphicsContext gc = layer.getGraphicsContext2D();
+        gc.clearRect(0, 0, layer.getWidth(), layer.getHeight());
         gc.save();
         gc.translate(offsetX, offsetY);
         gc.scale(zoom, zoom);
+        return gc;
+    }
 
-        int tilesWide = (int) (getWidth() / (zoom * GRID_SIZE)) + 2;
-        int tilesHigh = (int) (getHeight() / (zoom * GRID_SIZE)) + 2;
-        int startX = (int) (-offsetX / (zoom * GRID_SIZE)) - 1;
-        int startY = (int) (-offsetY / (zoom * GRID_SIZE)) - 1;
-
-        for (int y = startY; y < startY + tilesHigh; y++) {
-            for (int x = startX; x < startX + tilesWide; x++) {
-                gc.setFill(Color.WHITE);
-                gc.fillRect(x * GRID_SIZE, y * GRID_SIZE, GRID_SIZE, GRID_SIZE);
-
-                gc.setStroke(Color.LIGHTGRAY);
-                gc.setLineWidth(1);
-                gc.strokeRect(x * GRID_SIZE, y * GRID_SIZE, GRID_SIZE, GRID_SIZE);
+    private void renderBackground() {
+        if (zoom * GRID_SIZE <= MAX_CHUNKED_PIXELS) {
+            GraphicsContext gc = backgroundLayer.getGraphicsContext2D();
+            gc.clearRect(0, 0, backgroundLayer.getWidth(), backgroundLayer.getHeight());
+            chunkCache.draw(gc, offsetX, offsetY, zoom, backgroundLayer.getWidth(), backgroundLayer.getHeight());
+            if (chunkCache.isIncomplete()) {
+                renderScheduler.request(Layer.BACKGROUND);
             }
+            return;
         }
 
-        if (!walls.isEmpty()) {
-            List<Wall.WallSegment> outlineSegments = Wall.getMergedOutline(walls);
+        GraphicsContext gc = beginLayer(backgroundLayer);
+        double viewLeft = -offsetX / (zoom * GRID_SIZE);
+        double viewTop = -offsetY / (zoom * GRID_SIZE);
+        double viewRight = (backgroundLayer.getWidth() - offsetX) / (zoom * GRID_SIZE);
+        double viewBottom = (backgroundLayer.getHeight() - offsetY) / (zoom * GRID_SIZE);
+        drawStaticContent(gc, viewLeft, viewTop, viewRight, viewBottom, zoom);
+        gc.restore();
+    }
 
+    private void drawStaticContent(GraphicsContext gc, double left, double top, double right, double bottom, double scale) {
+        drawGrid(gc, (int) Math.floor(left) - 1, (int) Math.floor(top) - 1,
+                 (int) Math.ceil(right) + 1, (int) Math.ceil(bottom) + 1, scale);
+
+        if (!walls.isEmpty()) {
             gc.setStroke(Color.BLACK);
             gc.setLineWidth(2);
-            for (Wall.WallSegment segment : outlineSegments) {
-                double screenX1 = segment.x1 * GRID_SIZE;
-                double screenY1 = segment.y1 * GRID_SIZE;
-                double screenX2 = segment.x2 * GRID_SIZE;
-                double screenY2 = segment.y2 * GRID_SIZE;
-                gc.strokeLine(screenX1, screenY1, screenX2, screenY2);
+            for (Wall.OutlinePath path : outlineCache.getPaths(wallConnectivity)) {
+                if (!path.intersects(left, top, right, bottom)) continue;
+
+                gc.beginPath();
+                for (double[] ring : path.getRings()) {
+                    gc.moveTo(ring[0] * GRID_SIZE, ring[1] * GRID_SIZE);
+                    for (int i = 2; i < ring.length; i += 2) {
+                        gc.lineTo(ring[i] * GRID_SIZE, ring[i + 1] * GRID_SIZE);
+                    }
+                    gc.closePath();
+                }
+                gc.stroke();
             }
         }
 
-        for (Wall overlay : blackOverlays) {
-            double screenX = overlay.getX() * GRID_SIZE;
-            double screenY = overlay.getY() * GRID_SIZE;
-            double screenWidth = overlay.getWidth() * GRID_SIZE;
-            double screenHeight = overlay.getHeight() * GRID_SIZE;
-            
-            gc.setFill(Color.BLACK);
-            gc.fillRect(screenX, screenY, screenWidth, screenHeight);
+        gc.setFill(Color.BLACK);
+        for (Wall piece : overlayCoverage.query(left, top, right, bottom)) {
+            double pieceLeft = Math.max(left, piece.getLeft());
+            double pieceTop = Math.max(top, piece.getTop());
+            double pieceRight = Math.min(right, piece.getRight());
+            double pieceBottom = Math.min(bottom, piece.getBottom());
+            if (pieceRight <= pieceLeft || pieceBottom <= pieceTop) continue;
+
+            gc.fillRect(pieceLeft * GRID_SIZE, pieceTop * GRID_SIZE,
+                        (pieceRight - pieceLeft) * GRID_SIZE, (pieceBottom - pieceTop) * GRID_SIZE);
         }
+    }
 
-        for (int i = layerOrder.size() - 1; i >= 0; i--) {
-            String layerName = layerOrder.get(i);
-            if (!visibleLayers.contains(layerName)) {
+    private void renderTokens() {
+        GraphicsContext gc = beginLayer(tokenLayer);
+
+        double viewLeft = -offsetX / (zoom * GRID_SIZE);
+        double viewTop = -offsetY / (zoom * GRID_SIZE);
+        double viewRight = (tokenLayer.getWidth() - offsetX) / (zoom * GRID_SIZE);
+        double viewBottom = (tokenLayer.getHeight() - offsetY) / (zoom * GRID_SIZE);
+
+        if (fogEnabled) {
+            updateFog();
+            gc.setImageSmoothing(false);
+            fogOfWar.draw(gc, viewLeft, viewTop, viewRight, viewBottom, GRID_SIZE);
+            gc.setImageSmoothing(true);
+        }
+
+        if (isDraggingToken && selectedToken != null) {
+            double[] visibility = getVisibility(selectedToken);
+            if (visibility.length >= 6) {
+                gc.setFill(Color.rgb(255, 255, 150, 0.35));
+                gc.beginPath();
+                gc.moveTo(visibility[0] * GRID_SIZE, visibility[1] * GRID_SIZE);
+                for (int i = 2; i < visibility.length; i += 2) {
+                    gc.lineTo(visibility[i] * GRID_SIZE, visibility[i + 1] * GRID_SIZE);
+                }
+                gc.closePath();
+                gc.fill();
             }
-            
-            for (Token token : tokens) {
-                if (!token.getLayerCategory().equals(layerName)) {
+        }
+
+        if (rangeToken != null && !isDraggingToken && currentMode == Mode.SELECT && tokens.contains(rangeToken)) {
+            MovementRange.Field field = movementRange.getField(rangeToken);
+            if (field != null) {
+                gc.setImageSmoothing(false);
+                gc.drawImage(field.getImage(), field.getX() * GRID_SIZE, field.getY() * GRID_SIZE,
+                             field.getWidth() * GRID_SIZE, field.getHeight() * GRID_SIZE);
+                gc.setImageSmoothing(true);
+            }
+        }
+
+        Detail detail = getDetail();
+        TokenImageCache.shared().beginFrame();
+        TokenLabelCache.shared().beginFrame();
+        if (detail == Detail.DENSITY) {
+            drawTokenDensity(gc, viewLeft, viewTop, viewRight, viewBottom);
+        } else {
+            for (int i = layerOrder.size() - 1; i >= 0; i--) {
+                String layerName = layerOrder.get(i);
+                if (!visibleLayers.contains(layerName)) continue;
+
+                if (detail == Detail.FULL) {
+                    tokenIndex.query(layerName, viewLeft, viewTop, viewRight, viewBottom, token -> {
+                        if (!isHiddenByFog(token)) drawToken(gc, token);
+                    });
+                } else {
+                    tokenIndex.query(layerName, viewLeft, viewTop, viewRight, viewBottom, token -> {
+                        if (!isHiddenByFog(token)) drawSimpleToken(gc, token);
+                    });
                 }
-                
-                double exactX = token.getExactX();
-                double exactY = token.getExactY();
-                int size = token.getSize();
+            }
+        }
 
-                double screenX = exactX * GRID_SIZE;
-                double screenY = exactY * GRID_SIZE;
+        gc.restore();
+    }
 
-                Point gridPos = new Point((int)exactX, (int)exactY);
-                if (gridPos.x >= startX && gridPos.x < startX + tilesWide && 
-                    gridPos.y >= startY && gridPos.y < startY + tilesHigh) {
-                    
-                    double tokenSize = size * GRID_SIZE;
-
-                    if (currentMode == Mode.LAYER) {
-                        if (token.isInLayer(currentLayerCategory)) {
-                            gc.setStroke(Color.BLUE);
-                            gc.setLineWidth(3);
-                            gc.strokeRect(screenX - 2, screenY - 2, tokenSize + 4, tokenSize + 4);
-                        }
-                    }
-                    
-                    if (token.hasCustomImage()) {
-                        Image image = token.getCustomImage();
-                        gc.drawImage(image, screenX + 2, screenY + 2, tokenSize - 4, tokenSize - 4);
-                    }
-                    else {
-                        gc.setFill(token.getType().getColor());
-                        gc.fillOval(screenX + 2, screenY + 2, tokenSize - 4, tokenSize - 4);
+    private Detail getDetail() {
+        double pixelsPerCell = zoom * GRID_SIZE;
+        if (pixelsPerCell >= FULL_DETAIL_PIXELS) return Detail.FULL;
+        if (pixelsPerCell >= SIMPLE_DETAIL_PIXELS) return Detail.SIMPLE;
+        return Detail.DENSITY;
+    }
 
-                        gc.setStroke(Color.BLACK);
-                        gc.setLineWidth(2);
-                        gc.strokeOval(screenX + 2, screenY + 2, tokenSize - 4, tokenSize - 4);
-                    }
+    private void drawSimpleToken(GraphicsContext gc, Token token) {
+        double tokenSize = token.getSize() * GRID_SIZE;
+        double screenX = token.getExactX() * GRID_SIZE;
+        double screenY = token.getExactY() * GRID_SIZE;
+
+        if (currentMode == Mode.LAYER && token.isInLayer(currentLayerCategory)) {
+            double inset = 2 / zoom;
+            gc.setStroke(Color.BLUE);
+            gc.setLineWidth(2 / zoom);
+            gc.strokeRect(screenX - inset, screenY - inset, tokenSize + 2 * inset, tokenSize + 2 * inset);
+        }
+
+        gc.setFill(token.getType().getColor());
+        gc.fillRect(screenX, screenY, tokenSize, tokenSize);
+    }
+
+    private void drawTokenDensity(GraphicsContext gc, double viewLeft, double viewTop, double viewRight, double viewBottom) {
+        int block = 1;
+        while (block * zoom * GRID_SIZE < DENSITY_BLOCK_PIXELS) {
+            block *= 2;
+        }
+
+        int blockLeft = (int) Math.floor(viewLeft / block);
+        int blockTop = (int) Math.floor(viewTop / block);
+        int columns = (int) Math.floor(viewRight / block) - blockLeft + 1;
+        int rows = (int) Math.floor(viewBottom / block) - blockTop + 1;
+        if (columns <= 0 || rows <= 0) return;
 
-                    gc.setFill(Color.WHITE);
-                    gc.setStroke(Color.BLACK);
-                    gc.setLineWidth(1);
-                    String name = token.getName();
-                    if (name.length() > 8) name = name.substring(0, 8);
-                    gc.fillText(name, screenX + 4, screenY + tokenSize - 4);
+        Token.Type[] types = Token.Type.values();
+        int[] totals = new int[columns * rows];
+        int[] counts = new int[columns * rows * types.length];
+        int size = block;
+        for (String layerName : layerOrder) {
+            if (!visibleLayers.contains(layerName)) continue;
+
+            tokenIndex.query(layerName, viewLeft, viewTop, viewRight, viewBottom, token -> {
+                if (isHiddenByFog(token)) return;
+
+                double centerX = token.getExactX() + token.getSize() / 2.0;
+                double centerY = token.getExactY() + token.getSize() / 2.0;
+                int column = Math.max(0, Math.min(columns - 1, (int) Math.floor(centerX / size) - blockLeft));
+                int row = Math.max(0, Math.min(rows - 1, (int) Math.floor(centerY / size) - blockTop));
+                int index = row * columns + column;
+                totals[index]++;
+                counts[index * types.length + token.getType().ordinal()]++;
+            });
+        }
+
+        double cells = (double) block * block;
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int index = row * columns + column;
+                if (totals[index] == 0) continue;
+
+                int dominant = 0;
+                for (int t = 1; t < types.length; t++) {
+                    if (counts[index * types.length + t] > counts[index * types.length + dominant]) {
+                        dominant = t;
+                    }
                 }
+
+                double opacity = 0.3 + 0.6 * Math.sqrt(Math.min(1.0, totals[index] / cells));
+                Color color = types[dominant].getColor();
+                gc.setFill(Color.color(color.getRed(), color.getGreen(), color.getBlue(), opacity));
+                gc.fillRect((blockLeft + column) * block * GRID_SIZE, (blockTop + row) * block * GRID_SIZE,
+                            block * GRID_SIZE, block * GRID_SIZE);
+            }
+        }
+    }
+
+    private void drawToken(GraphicsContext gc, Token token) {
+        int size = token.getSize();
+        double screenX = token.getExactX() * GRID_SIZE;
+        double screenY = token.getExactY() * GRID_SIZE;
+
+        double tokenSize = size * GRID_SIZE;
+
+        if (currentMode == Mode.LAYER) {
+            if (token.isInLayer(currentLayerCategory)) {
+                gc.setStroke(Color.BLUE);
+                gc.setLineWidth(3);
+                gc.strokeRect(screenX - 2, screenY - 2, tokenSize + 4, tokenSize + 4);
             }
         }
+        
+        Image image = token.hasCustomImage() ? token.getImage(tokenSize * zoom) : null;
+        if (image != null) {
+            gc.drawImage(image, screenX + 2, screenY + 2, tokenSize - 4, tokenSize - 4);
+        }
+        else {
+            gc.setFill(token.getType().getColor());
+            gc.fillOval(screenX + 2, screenY + 2, tokenSize - 4, tokenSize - 4);
+
+            gc.setStroke(Color.BLACK);
+            gc.setLineWidth(2);
+            gc.strokeOval(screenX + 2, screenY + 2, tokenSize - 4, tokenSize - 4);
+        }
+
+        TokenLabelCache.shared().draw(gc, token.getName(), screenX + 4, screenY + tokenSize - 4, zoom);
+    }
+
+    private void renderInteraction() {
+        GraphicsContext gc = beginLayer(interactionLayer);
+
+        if (isDraggingToken && selectedToken != null) {
+            drawTokenPath(gc, selectedToken.getSize());
+        }
+
+        if (currentMode == Mode.AOE && aoeTemplate != null) {
+            drawTemplate(gc);
+        }
 
         if (isDragging && currentMode == Mode.WALL) {
             double x = Math.min(dragStartX, dragEndX) * GRID_SIZE;
@@ -372,6 +677,17 @@ public class MapCanvas extends Canvas {
             gc.setStroke(Color.rgb(0, 0, 255, 0.7));
             gc.setLineWidth(2);
             gc.strokeRect(x, y, width, height);
+        } else if (isDragging && currentMode == Mode.ERASER) {
+            double x = Math.min(dragStartX, dragEndX) * GRID_SIZE;
+            double y = Math.min(dragStartY, dragEndY) * GRID_SIZE;
+            double width = Math.abs(dragEndX - dragStartX) * GRID_SIZE;
+            double height = Math.abs(dragEndY - dragStartY) * GRID_SIZE;
+            
+            gc.setFill(Color.rgb(255, 0, 0, 0.2));
+            gc.fillRect(x, y, width, height);
+            gc.setStroke(Color.rgb(255, 0, 0, 0.7));
+            gc.setLineWidth(2);
+            gc.strokeRect(x, y, width, height);
         } else if (isDragging && currentMode == Mode.BLACK_OVERLAY) {
             double x = Math.min(dragStartX, dragEndX) * GRID_SIZE;
             double y = Math.min(dragStartY, dragEndY) * GRID_SIZE;
@@ -388,9 +704,230 @@ public class MapCanvas extends Canvas {
         gc.restore();
     }
     
+    private void drawGrid(GraphicsContext gc, int left, int top, int right, int bottom, double scale) {
+        gc.setFill(Color.WHITE);
+        gc.fillRect(left * GRID_SIZE, top * GRID_SIZE, (right - left) * GRID_SIZE, (bottom - top) * GRID_SIZE);
+
+        double cellPixels = GRID_SIZE * scale;
+        int step = 1;
+        while (cellPixels * step < MIN_GRID_SPACING && step < MAX_GRID_STEP) {
+            step *= 2;
+        }
+        double fade = Math.max(0, Math.min(1, (cellPixels * step - MIN_GRID_SPACING) / MIN_GRID_SPACING));
+
+        gc.setLineWidth(Math.max(1, 1 / scale));
+        if (fade > 0) {
+            gc.setStroke(Color.LIGHTGRAY.deriveColor(0, 1, 1, fade));
+            strokeGridLines(gc, left, top, right, bottom, step, step * 2);
+        }
+        gc.setStroke(Color.LIGHTGRAY);
+        strokeGridLines(gc, left, top, right, bottom, step * 2, 0);
+    }
+
+    private void strokeGridLines(GraphicsContext gc, int left, int top, int right, int bottom, int step, int skip) {
+        int firstX = Math.floorDiv(left, step) * step;
+        int firstY = Math.floorDiv(top, step) * step;
+
+        gc.beginPath();
+        for (int x = firstX; x <= right; x += step) {
+            if (skip > 0 && Math.floorMod(x, skip) == 0) continue;
+            gc.moveTo(x * GRID_SIZE, top * GRID_SIZE);
+            gc.lineTo(x * GRID_SIZE, bottom * GRID_SIZE);
+        }
+        for (int y = firstY; y <= bottom; y += step) {
+            if (skip > 0 && Math.floorMod(y, skip) == 0) continue;
+            gc.moveTo(left * GRID_SIZE, y * GRID_SIZE);
+            gc.lineTo(right * GRID_SIZE, y * GRID_SIZE);
+        }
+        gc.stroke();
+    }
+
+    private void updateTokenPath(double gridX, double gridY) {
+        int targetX = (int) Math.floor(gridX);
+        int targetY = (int) Math.floor(gridY);
+        if (hasTokenPath && targetX == pathTargetX && targetY == pathTargetY) return;
+
+        pathTargetX = targetX;
+        pathTargetY = targetY;
+        hasTokenPath = pathFinder.findPath((int) Math.floor(tokenStartX), (int) Math.floor(tokenStartY),
+                                           targetX, targetY, selectedToken.getSize());
+    }
+
+    private void drawTokenPath(GraphicsContext gc, int size) {
+        double half = size / 2.0;
+        double labelX = (pathTargetX + half) * GRID_SIZE;
+        double labelY = pathTargetY * GRID_SIZE - 6;
+
+        if (!hasTokenPath) {
+            gc.setStroke(Color.rgb(200, 0, 0, 0.8));
+            gc.setLineWidth(2);
+            gc.setLineDashes(6);
+            gc.strokeLine((Math.floor(tokenStartX) + half) * GRID_SIZE, (Math.floor(tokenStartY) + half) * GRID_SIZE,
+                          (pathTargetX + half) * GRID_SIZE, (pathTargetY + half) * GRID_SIZE);
+            gc.setLineDashes(null);
+            gc.setFill(Color.rgb(200, 0, 0));
+            gc.fillText("Blocked", labelX, labelY);
+            return;
+        }
+
+        gc.setStroke(Color.rgb(0, 150, 0, 0.8));
+        gc.setLineWidth(3);
+        gc.beginPath();
+        for (int i = 0; i < pathFinder.getPathLength(); i++) {
+            double x = (pathFinder.getPathX(i) + half) * GRID_SIZE;
+            double y = (pathFinder.getPathY(i) + half) * GRID_SIZE;
+            if (i == 0) {
+                gc.moveTo(x, y);
+            } else {
+                gc.lineTo(x, y);
+            }
+        }
+        gc.stroke();
+
+        gc.setFill(Color.rgb(0, 100, 0));
+        gc.fillText(pathFinder.getCostFeet() + " ft", labelX, labelY);
+    }
+
+    private void updateTemplate() {
+        double length = aoeSizeFeet / (double) PathFinder.FEET_PER_SQUARE;
+        aoeTemplate = new AreaTemplate(aoeShape, aoeOriginX, aoeOriginY, length,
+                                       aoeOriginX + aoeDirectionX, aoeOriginY + aoeDirectionY);
+        aoeHits.clear();
+
+        AreaTemplate template = aoeTemplate;
+        tokenIndex.query(template.getMinX(), template.getMinY(), template.getMaxX(), template.getMaxY(), token -> {
+            double left = token.getExactX();
+            double top = token.getExactY();
+            int size = Math.max(1, token.getSize());
+            if (!template.intersectsRect(left, top, left + size, top + size)) return;
+            if (aoeBlockedByWalls && !canSeeFootprint(template.getOriginX(), template.getOriginY(), left, top, size)) return;
+            aoeHits.add(token);
+        });
+    }
+
+    private boolean canSeeFootprint(double fromX, double fromY, double left, double top, int size) {
+        visibilityEngine.setSegments(outlineCache.getBlockingSegments(wallConnectivity), wallConnectivity.getVersion());
+
+        double inset = 0.05;
+        double[] xs = { left + size / 2.0, left + inset, left + size - inset, left + inset, left + size - inset };
+        double[] ys = { top + size / 2.0, top + inset, top + inset, top + size - inset, top + size - inset };
+        for (int i = 0; i < xs.length; i++) {
+            if (visibilityEngine.hasLineOfSight(fromX, fromY, xs[i], ys[i])) return true;
+        }
+        return false;
+    }
+
+    private void drawTemplate(GraphicsContext gc) {
+        gc.setFill(Color.rgb(255, 140, 0, 0.3));
+        gc.setStroke(Color.rgb(255, 140, 0, 0.9));
+        gc.setLineWidth(2);
+
+        double[] polygon = aoeTemplate.getPolygon();
+        if (polygon == null) {
+            double radius = aoeTemplate.getLength() * GRID_SIZE;
+            double x = aoeTemplate.getOriginX() * GRID_SIZE - radius;
+            double y = aoeTemplate.getOriginY() * GRID_SIZE - radius;
+            gc.fillOval(x, y, radius * 2, radius * 2);
+            gc.strokeOval(x, y, radius * 2, radius * 2);
+        } else {
+            gc.beginPath();
+            gc.moveTo(polygon[0] * GRID_SIZE, polygon[1] * GRID_SIZE);
+            for (int i = 2; i < polygon.length; i += 2) {
+                gc.lineTo(polygon[i] * GRID_SIZE, polygon[i + 1] * GRID_SIZE);
+            }
+            gc.closePath();
+            gc.fill();
+            gc.stroke();
+        }
+
+        gc.setStroke(Color.RED);
+        gc.setLineWidth(3);
+        for (Token token : aoeHits) {
+            double size = Math.max(1, token.getSize()) * GRID_SIZE;
+            gc.strokeRect(token.getExactX() * GRID_SIZE, token.getExactY() * GRID_SIZE, size, size);
+        }
+
+        gc.setFill(Color.rgb(160, 60, 0));
+        gc.fillText(aoeSizeFeet + " ft " + aoeShape.getDisplayName().toLowerCase() + ": " + aoeHits.size() + " hit",
+                    aoeTemplate.getOriginX() * GRID_SIZE + 6, aoeTemplate.getOriginY() * GRID_SIZE - 6);
+    }
+
+    public void setAoeShape(AreaTemplate.Shape shape) {
+        this.aoeShape = shape;
+        if (aoeTemplate != null) updateTemplate();
+        renderScheduler.request(Layer.PREVIEW);
+    }
+
+    public void setAoeSize(int feet) {
+        this.aoeSizeFeet = feet;
+        if (aoeTemplate != null) updateTemplate();
+        renderScheduler.request(Layer.PREVIEW);
+    }
+
+    public void setAoeBlockedByWalls(boolean blocked) {
+        this.aoeBlockedByWalls = blocked;
+        if (aoeTemplate != null) updateTemplate();
+        renderScheduler.request(Layer.PREVIEW);
+    }
+
+    public List<Token> getAoeHits() {
+        return new ArrayList<>(aoeHits);
+    }
+
+    private double[] getVisibility(Token token) {
+        visibilityEngine.setSegments(outlineCache.getBlockingSegments(wallConnectivity), wallConnectivity.getVersion());
+        
+        double centerX = token.getExactX() + token.getSize() / 2.0;
+        double centerY = token.getExactY() + token.getSize() / 2.0;
+        return visibilityEngine.getVisibility((int) Math.floor(centerX), (int) Math.floor(centerY));
+    }
+    
+    private void updateFog() {
+        List<double[]> polygons = new ArrayList<>();
+        for (Token token : tokens) {
+            if (token.getType() == Token.Type.PLAYER) {
+                polygons.add(getVisibility(token));
+            }
+        }
+        fogOfWar.update(polygons);
+    }
+
+    private boolean isHiddenByFog(Token token) {
+        if (!fogEnabled || token.getType() == Token.Type.PLAYER) return false;
+
+        int x0 = (int) Math.floor(token.getExactX());
+        int y0 = (int) Math.floor(token.getExactY());
+        int x1 = (int) Math.ceil(token.getExactX() + token.getSize());
+        int y1 = (int) Math.ceil(token.getExactY() + token.getSize());
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                if (fogOfWar.isVisible(x, y)) return false;
+            }
+        }
+        return true;
+    }
+
+    public void setFogEnabled(boolean enabled) {
+        this.fogEnabled = enabled;
+        renderScheduler.request(Layer.TOKENS);
+    }
+
+    public boolean isFogEnabled() {
+        return fogEnabled;
+    }
+
+    public void resetFog() {
+        fogOfWar.reset();
+        renderScheduler.request(Layer.TOKENS);
+    }
+
     public void setMode(Mode mode) {
         this.currentMode = mode;
-        draw();
+        if (mode != Mode.AOE) {
+            aoeTemplate = null;
+            aoeHits.clear();
+        }
+        renderScheduler.request(Layer.TOKENS, Layer.PREVIEW);
     }
     
     public void setTokenType(Token.Type tokenType) {
@@ -398,67 +935,129 @@ public class MapCanvas extends Canvas {
     }
     
     public void resizeCanvas(double width, double height) {
-        setWidth(width);
-        setHeight(height);
-        draw();
+        for (Canvas layer : new Canvas[] { backgroundLayer, tokenLayer, interactionLayer }) {
+            layer.setWidth(width);
+            layer.setHeight(height);
+        }
+        setPrefSize(width, height);
+        renderScheduler.requestAll();
     }
     
-    public boolean[][] getWallsAsArray() {
-        if (walls.isEmpty()) return new boolean[0][0];
-
-        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
-        double maxX = Double.MIN_VALUE, maxY = Double.MIN_VALUE;
-        
-        for (Wall wall : walls) {
-            minX = Math.min(minX, wall.getLeft());
-            minY = Math.min(minY, wall.getTop());
-            maxX = Math.max(maxX, wall.getRight());
-            maxY = Math.max(maxY, wall.getBottom());
-        }
-        
-        int width = (int) Math.ceil(maxX - minX);
-        int height = (int) Math.ceil(maxY - minY);
-        
-        boolean[][] array = new boolean[height][width];
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                double gridX = minX + x;
-                double gridY = minY + y;
-
-                for (Wall wall : walls) {
-                    if (wall.contains(gridX, gridY)) {
-                        array[y][x] = true;
-                        break;
-                    }
-                }
-            }
-        }
-        
-        return array;
+    public OccupancyGrid getWallGrid() {
+        return OccupancyGrid.fromWalls(walls);
     }
     
-    public void setWalls(boolean[][] wallArray) {
+    public void setWalls(OccupancyGrid wallGrid) {
         walls.clear();
         
-        for (int y = 0; y < wallArray.length; y++) {
-            for (int x = 0; x < wallArray[0].length; x++) {
-                if (wallArray[y][x]) {
-                    Wall wall = new Wall(x, y, 1, 1);
-                    walls.add(wall);
-                }
-            }
+        for (Wall wall : wallGrid.toWalls()) {
+            walls.add(wall);
         }
+        wallConnectivity.rebuild();
+        chunkCache.clear();
+        history.clear();
         
-        draw();
+        renderScheduler.request(Layer.WALLS);
     }
     
     public void setWalls(List<Wall> newWalls) {
-        walls = new ArrayList<>(newWalls);
-        draw();
+        walls.clear();
+        for (Wall wall : newWalls) {
+            walls.add(wall);
+        }
+        wallConnectivity.rebuild();
+        chunkCache.clear();
+        history.clear();
+        renderScheduler.request(Layer.WALLS);
+    }
+    
+    public void setWalls(WallStore newWalls) {
+        walls.clear();
+        newWalls.forEach((id, x, y, width, height) -> walls.add(x, y, width, height));
+        wallConnectivity.rebuild();
+        chunkCache.clear();
+        history.clear();
+        renderScheduler.request(Layer.WALLS);
     }
     
     public List<Wall> getWalls() {
-        return new ArrayList<>(walls);
+        return walls.toWalls();
+    }
+    
+    public WallStore getWallStore() {
+        return walls.copy();
+    }
+
+    private double[] getContentBounds() {
+        double left = Double.MAX_VALUE, top = Double.MAX_VALUE;
+        double right = -Double.MAX_VALUE, bottom = -Double.MAX_VALUE;
+        List<Wall.OutlinePath> paths = outlineCache.getPaths(wallConnectivity);
+        for (Wall.OutlinePath path : paths) {
+            left = Math.min(left, path.getMinX());
+            top = Math.min(top, path.getMinY());
+            right = Math.max(right, path.getMaxX());
+            bottom = Math.max(bottom, path.getMaxY());
+        }
+        for (Wall overlay : blackOverlays) {
+            left = Math.min(left, overlay.getLeft());
+            top = Math.min(top, overlay.getTop());
+            right = Math.max(right, overlay.getRight());
+            bottom = Math.max(bottom, overlay.getBottom());
+        }
+        for (Token token : tokens) {
+            left = Math.min(left, token.getExactX());
+            top = Math.min(top, token.getExactY());
+            right = Math.max(right, token.getExactX() + token.getSize());
+            bottom = Math.max(bottom, token.getExactY() + token.getSize());
+        }
+        if (left > right) return null;
+        return new double[] { left, top, right, bottom };
+    }
+
+    public MapExporter createExporter(int pixelsPerCell) {
+        double[] bounds = getContentBounds();
+        if (bounds == null) return null;
+
+        double left = bounds[0], top = bounds[1], right = bounds[2], bottom = bounds[3];
+        List<Wall.OutlinePath> paths = outlineCache.getPaths(wallConnectivity);
+        int originX = (int) Math.floor(left) - 1;
+        int originY = (int) Math.floor(top) - 1;
+        int columns = (int) Math.ceil(right) + 1 - originX;
+        int rows = (int) Math.ceil(bottom) + 1 - originY;
+        MapExporter exporter = new MapExporter(originX, originY, columns, rows, pixelsPerCell,
+                                               2.0 / GRID_SIZE, 2.0 / GRID_SIZE);
+
+        for (Wall.OutlinePath path : paths) {
+            for (double[] ring : path.getRings()) {
+                for (int i = 0; i < ring.length; i += 2) {
+                    int j = (i + 2) % ring.length;
+                    exporter.addWallSegment(ring[i], ring[i + 1], ring[j], ring[j + 1]);
+                }
+            }
+        }
+        for (Wall piece : overlayCoverage.getPieces()) {
+            exporter.addOverlay(piece.getLeft(), piece.getTop(), piece.getRight(), piece.getBottom());
+        }
+
+        for (int i = layerOrder.size() - 1; i >= 0; i--) {
+            String layerName = layerOrder.get(i);
+            if (!visibleLayers.contains(layerName)) continue;
+
+            for (Token token : tokens) {
+                if (!layerName.equals(token.getLayerCategory())) continue;
+
+                exporter.addToken(token.getExactX(), token.getExactY(), token.getSize(),
+                                  toArgb(token.getType().getColor()), token.hasCustomImage() ? token.getImagePath() : null);
+            }
+        }
+        return exporter;
+    }
+
+    private static int toArgb(Color color) {
+        return ((int) Math.round(color.getOpacity() * 255) << 24) |
+               ((int) Math.round(color.getRed() * 255) << 16) |
+               ((int) Math.round(color.getGreen() * 255) << 8) |
+               (int) Math.round(color.getBlue() * 255);
     }
     
     public List<Token> getTokens() {
@@ -467,7 +1066,12 @@ public class MapCanvas extends Canvas {
     
     public void setTokens(List<Token> newTokens) {
         tokens = new ArrayList<>(newTokens);
-        draw();
+        for (String layerName : new TreeSet<>(getAllLayerCategories())) {
+            addLayer(layerName);
+        }
+        tokenIndex.rebuild(tokens);
+        history.clear();
+        renderScheduler.request(Layer.TOKENS);
     }
     
     public List<Wall> getBlackOverlays() {
@@ -475,13 +1079,17 @@ public class MapCanvas extends Canvas {
     }
     
     public void setBlackOverlays(List<Wall> newOverlays) {
-        blackOverlays = new ArrayList<>(newOverlays);
-        draw();
+        blackOverlays = new LinkedHashSet<>(newOverlays);
+        overlayIndex.rebuild(newOverlays);
+        overlayCoverage.rebuild(newOverlays);
+        chunkCache.clear();
+        history.clear();
+        renderScheduler.request(Layer.OVERLAYS);
     }
 
     public void setVisibleLayers(Set<String> layers) {
         visibleLayers = new HashSet<>(layers);
-        draw();
+        renderScheduler.request(Layer.TOKENS);
     }
     
     public Set<String> getVisibleLayers() {
@@ -490,7 +1098,7 @@ public class MapCanvas extends Canvas {
     
     public void setCurrentLayerCategory(String category) {
         this.currentLayerCategory = category != null ? category : "Default";
-        draw();
+        renderScheduler.request(Layer.TOKENS);
     }
     
     public String getCurrentLayerCategory() {
@@ -503,7 +1111,7 @@ public class MapCanvas extends Canvas {
         } else {
             visibleLayers.add(layerName);
         }
-        draw();
+        renderScheduler.request(Layer.TOKENS);
     }
     
     public Set<String> getAllLayerCategories() {
@@ -522,22 +1130,23 @@ public class MapCanvas extends Canvas {
         if (!layerOrder.contains(layerName)) {
             layerOrder.add(layerName);
             visibleLayers.add(layerName);
-            draw();
+            renderScheduler.request(Layer.TOKENS);
         }
     }
     
     public void removeLayer(String layerName) {
-        if (layerOrder.size() > 1 && layerOrder.contains(layerName)) {
-            layerOrder.remove(layerName);
-            visibleLayers.remove(layerName);
-
+        if (!layerName.equals("Default") && layerOrder.contains(layerName)) {
+            List<Token> moved = new ArrayList<>();
             for (Token token : tokens) {
                 if (token.getLayerCategory().equals(layerName)) {
-                    token.setLayerCategory("Default");
+                    moved.add(token);
                 }
             }
-            
-            draw();
+
+            LayerRemoval removal = new LayerRemoval(layerName, layerOrder.indexOf(layerName),
+                                                    visibleLayers.contains(layerName), moved);
+            removal.redo();
+            history.record(removal);
         }
     }
     
@@ -546,7 +1155,7 @@ public class MapCanvas extends Canvas {
         if (index > 0) {
             layerOrder.remove(index);
             layerOrder.add(index - 1, layerName);
-            draw();
+            renderScheduler.request(Layer.TOKENS);
         }
     }
     
@@ -555,173 +1164,147 @@ public class MapCanvas extends Canvas {
         if (index >= 0 && index < layerOrder.size() - 1) {
             layerOrder.remove(index);
             layerOrder.add(index + 1, layerName);
-            draw();
+            renderScheduler.request(Layer.TOKENS);
         }
     }
     
-    private static class MapState {
-        List<Wall> walls;
-        List<Token> tokens;
-        List<Wall> blackOverlays;
-        
-        MapState(List<Wall> walls, List<Token> tokens, List<Wall> blackOverlays) {
-            this.walls = walls;
-            this.tokens = tokens;
-            this.blackOverlays = blackOverlays;
-        }
-    }
+    private class MapEdit implements EditHistory.Command {
+        final List<double[]> addedWalls = new ArrayList<>();
+        final List<double[]> removedWalls = new ArrayList<>();
+        final List<Wall> addedOverlays = new ArrayList<>();
+        final List<Wall> removedOverlays = new ArrayList<>();
+        final Wall area;
 
-    private List<Wall.WallSegment> findOuterBoundary() {
-        if (walls.isEmpty()) {
-            return new ArrayList<>();
+        MapEdit(Wall area) {
+            this.area = area;
         }
-        
-        List<Wall.WallSegment> allEdges = new ArrayList<>();
-        List<Wall.WallSegment> outerEdges = new ArrayList<>();
 
-        for (Wall wall : walls) {
-            allEdges.addAll(wall.getOutlineSegments());
+        @Override
+        public void undo() {
+            apply(removedWalls, addedWalls, removedOverlays, addedOverlays);
         }
 
-        for (Wall.WallSegment edge : allEdges) {
-            boolean isInternal = false;
+        @Override
+        public void redo() {
+            apply(addedWalls, removedWalls, addedOverlays, removedOverlays);
+        }
 
-            int containingWalls = 0;
-            for (Wall wall : walls) {
-                if (isEdgeContainedInWall(edge, wall)) {
-                    containingWalls++;
-                }
+        private void apply(List<double[]> wallsToAdd, List<double[]> wallsToRemove,
+                           List<Wall> overlaysToAdd, List<Wall> overlaysToRemove) {
+            int[] removedIds = new int[wallsToRemove.size()];
+            for (int i = 0; i < removedIds.length; i++) {
+                removedIds[i] = (int) wallsToRemove.get(i)[0];
+                walls.remove(removedIds[i]);
             }
-
-            if (containingWalls > 1) {
-                isInternal = true;
+            wallConnectivity.removeWalls(removedIds);
+            for (double[] wall : wallsToAdd) {
+                int id = (int) wall[0];
+                walls.restore(id, wall[1], wall[2], wall[3], wall[4]);
+                wallConnectivity.addWall(id);
             }
 
-            if (!isInternal) {
-                outerEdges.add(edge);
+            for (Wall overlay : overlaysToRemove) {
+                blackOverlays.remove(overlay);
+                overlayIndex.remove(overlay);
+                overlayCoverage.remove(overlay);
+            }
+            for (Wall overlay : overlaysToAdd) {
+                blackOverlays.add(overlay);
+                overlayIndex.add(overlay);
+                overlayCoverage.add(overlay);
             }
-        }
 
-        return mergeAdjacentEdges(outerEdges);
+            invalidateChunks(area.getLeft(), area.getTop(), area.getRight(), area.getBottom());
+            renderScheduler.request(Layer.WALLS, Layer.OVERLAYS);
+        }
     }
-    
-    private boolean isEdgeContainedInWall(Wall.WallSegment edge, Wall wall) {
-        double wallLeft = wall.getLeft();
-        double wallRight = wall.getRight();
-        double wallTop = wall.getTop();
-        double wallBottom = wall.getBottom();
 
-        if (edge.isHorizontal()) {
-            return edge.y1 >= wallTop && edge.y1 < wallBottom &&
-                   edge.x1 >= wallLeft && edge.x2 <= wallRight;
+    private class TokenPlacement implements EditHistory.Command {
+        final Token token;
+
+        TokenPlacement(Token token) {
+            this.token = token;
         }
-        else if (edge.isVertical()) {
-            return edge.x1 >= wallLeft && edge.x1 < wallRight &&
-                   edge.y1 >= wallTop && edge.y2 <= wallBottom;
+
+        @Override
+        public void undo() {
+            tokens.remove(token);
+            tokenIndex.remove(token);
+            if (rangeToken == token) {
+                rangeToken = null;
+            }
+            renderScheduler.request(Layer.TOKENS);
         }
-        
-        return false;
-    }
-    
-    private List<Wall.WallSegment> mergeAdjacentEdges(List<Wall.WallSegment> edges) {
-        if (edges.size() <= 1) return edges;
-        
-        List<Wall.WallSegment> merged = new ArrayList<>();
-        boolean[] used = new boolean[edges.size()];
-        
-        for (int i = 0; i < edges.size(); i++) {
-            if (used[i]) continue;
-            
-            Wall.WallSegment current = edges.get(i);
-            used[i] = true;
-
-            boolean extended;
-            do {
-                extended = false;
-                for (int j = 0; j < edges.size(); j++) {
-                    if (used[j]) continue;
-                    
-                    Wall.WallSegment next = edges.get(j);
-
-                    if (current.isHorizontal() && next.isHorizontal() && 
-                        Math.abs(current.y1 - next.y1) < 0.01 &&
-                        Math.abs(current.x2 - next.x1) < 0.01) {
-                        current = new Wall.WallSegment(current.x1, current.y1, next.x2, next.y2);
-                        used[j] = true;
-                        extended = true;
-                    }
-                    else if (current.isVertical() && next.isVertical() &&
-                               Math.abs(current.x1 - next.x1) < 0.01 &&
-                               Math.abs(current.y2 - next.y1) < 0.01) {
-                        current = new Wall.WallSegment(current.x1, current.y1, next.x2, next.y2);
-                        used[j] = true;
-                        extended = true;
-                    }
-                }
-            } while (extended);
-            
-            merged.add(current);
+
+        @Override
+        public void redo() {
+            tokens.add(token);
+            tokenIndex.add(token);
+            renderScheduler.request(Layer.TOKENS);
         }
-        
-        return merged;
     }
 
-    private boolean isEdgeInternal(Wall.WallSegment segment, Wall sourceWall) {
-        for (Wall otherWall : walls) {
-            if (otherWall == sourceWall) continue;
+    private class LayerRemoval implements EditHistory.Command {
+        final String layerName;
+        final int index;
+        final boolean visible;
+        final List<Token> moved;
 
-            double wallLeft = otherWall.getLeft();
-            double wallRight = otherWall.getRight();
-            double wallTop = otherWall.getTop();
-            double wallBottom = otherWall.getBottom();
+        LayerRemoval(String layerName, int index, boolean visible, List<Token> moved) {
+            this.layerName = layerName;
+            this.index = index;
+            this.visible = visible;
+            this.moved = moved;
+        }
 
-            if (segment.isHorizontal()) {
-                if (segment.y1 >= wallTop && segment.y1 < wallBottom &&
-                    segment.x1 >= wallLeft && segment.x2 <= wallRight) {
-                    return true;
-                }
+        @Override
+        public void undo() {
+            layerOrder.add(Math.min(index, layerOrder.size()), layerName);
+            if (visible) {
+                visibleLayers.add(layerName);
             }
-            else if (segment.isVertical()) {
-                if (segment.x1 >= wallLeft && segment.x1 < wallRight &&
-                    segment.y1 >= wallTop && segment.y2 <= wallBottom) {
-                    return true;
-                }
+            for (Token token : moved) {
+                token.setLayerCategory(layerName);
+                tokenIndex.update(token);
             }
+            renderScheduler.request(Layer.TOKENS);
         }
-        
-        return false;
-    }
 
-    private List<Wall.WallSegment> getUniqueSegments(List<Wall.WallSegment> segments) {
-        List<Wall.WallSegment> unique = new ArrayList<>();
-        boolean[] used = new boolean[segments.size()];
-        for (int i = 0; i < segments.size(); i++) {
-            if (used[i]) continue;
-            Wall.WallSegment seg1 = segments.get(i);
-            boolean foundPair = false;
-            for (int j = i + 1; j < segments.size(); j++) {
-                if (used[j]) continue;
-                Wall.WallSegment seg2 = segments.get(j);
-                if (segmentsEqual(seg1, seg2)) {
-                    used[i] = true;
-                    used[j] = true;
-                    foundPair = true;
-                    break;
-                }
-            }
-            if (!foundPair) {
-                unique.add(seg1);
+        @Override
+        public void redo() {
+            layerOrder.remove(layerName);
+            visibleLayers.remove(layerName);
+            for (Token token : moved) {
+                token.setLayerCategory("Default");
+                tokenIndex.update(token);
             }
+            renderScheduler.request(Layer.TOKENS);
         }
-        return unique;
     }
 
-    private boolean segmentsEqual(Wall.WallSegment a, Wall.WallSegment b) {
-        return (almostEqual(a.x1, b.x1) && almostEqual(a.y1, b.y1) && almostEqual(a.x2, b.x2) && almostEqual(a.y2, b.y2)) ||
-               (almostEqual(a.x1, b.x2) && almostEqual(a.y1, b.y2) && almostEqual(a.x2, b.x1) && almostEqual(a.y2, b.y1));
-    }
+    private class TokenEdit implements EditHistory.Command {
+        final Token token;
+        final Token.State before;
+        final Token.State after;
 
-    private boolean almostEqual(double a, double b) {
-        return Math.abs(a - b) < 1e-6;
+        TokenEdit(Token token, Token.State before, Token.State after) {
+            this.token = token;
+            this.before = before;
+            this.after = after;
+        }
+
+        @Override
+        public void undo() {
+            token.applyState(before);
+            tokenIndex.update(token);
+            renderScheduler.request(Layer.TOKENS);
+        }
+
+        @Override
+        public void redo() {
+            token.applyState(after);
+            tokenIndex.update(token);
+            renderScheduler.request(Layer.TOKENS);
+        }
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,159 @@
+package src;
+
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+public class MapChunkCache {
+    public static final int CHUNK_PIXELS = 512;
+    private static final int MIN_BUCKET = -12;
+    private static final int MAX_BUCKET = 9;
+    private static final int DEFAULT_MAX_CHUNKS = 64;
+    private static final int MAX_RENDERS_PER_FRAME = 8;
+
+    public interface ChunkRenderer {
+        void render(GraphicsContext gc, double left, double top, double right, double bottom, double zoom);
+    }
+
+    private final int cellPixels;
+    private final ChunkRenderer renderer;
+    private final Canvas scratch = new Canvas(CHUNK_PIXELS, CHUNK_PIXELS);
+    private final SnapshotParameters parameters = new SnapshotParameters();
+    private int capacity = DEFAULT_MAX_CHUNKS;
+    private final Map<Key, WritableImage> chunks = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, WritableImage> eldest) {
+            return size() > capacity;
+        }
+    };
+    private boolean incomplete = false;
+
+    public MapChunkCache(int cellPixels, ChunkRenderer renderer) {
+        this.cellPixels = cellPixels;
+        this.renderer = renderer;
+        parameters.setFill(Color.WHITE);
+    }
+
+    public void draw(GraphicsContext gc, double offsetX, double offsetY, double zoom, double width, double height) {
+        incomplete = false;
+
+        int bucket = bucketFor(zoom * cellPixels);
+        double cells = cellsPerChunk(bucket);
+        double chunkScreen = cells * cellPixels * zoom;
+        int left = (int) Math.floor(-offsetX / chunkScreen);
+        int top = (int) Math.floor(-offsetY / chunkScreen);
+        int right = (int) Math.floor((width - offsetX) / chunkScreen);
+        int bottom = (int) Math.floor((height - offsetY) / chunkScreen);
+        capacity = Math.max(DEFAULT_MAX_CHUNKS, 2 * (right - left + 1) * (bottom - top + 1));
+
+        int rendered = 0;
+        for (int cy = top; cy <= bottom; cy++) {
+            for (int cx = left; cx <= right; cx++) {
+                Key key = new Key(bucket, cx, cy);
+                WritableImage image = chunks.get(key);
+                if (image == null && rendered < MAX_RENDERS_PER_FRAME) {
+                    image = renderChunk(bucket, cx, cy);
+                    chunks.put(key, image);
+                    rendered++;
+                }
+
+                double x0 = Math.round(offsetX + cx * chunkScreen);
+                double y0 = Math.round(offsetY + cy * chunkScreen);
+                double x1 = Math.round(offsetX + (cx + 1) * chunkScreen);
+                double y1 = Math.round(offsetY + (cy + 1) * chunkScreen);
+                if (image != null) {
+                    gc.drawImage(image, x0, y0, x1 - x0, y1 - y0);
+                    continue;
+                }
+
+                incomplete = true;
+                gc.save();
+                gc.beginPath();
+                gc.rect(x0, y0, x1 - x0, y1 - y0);
+                gc.clip();
+                gc.translate(offsetX, offsetY);
+                gc.scale(zoom, zoom);
+                renderer.render(gc, cx * cells, cy * cells, (cx + 1) * cells, (cy + 1) * cells, zoom);
+                gc.restore();
+            }
+        }
+    }
+
+    public void invalidate(double left, double top, double right, double bottom) {
+        Iterator<Key> iterator = chunks.keySet().iterator();
+        while (iterator.hasNext()) {
+            Key key = iterator.next();
+            double cells = cellsPerChunk(key.bucket);
+            if (key.x * cells <= right && (key.x + 1) * cells >= left &&
+                key.y * cells <= bottom && (key.y + 1) * cells >= top) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        chunks.clear();
+    }
+
+    public boolean isIncomplete() {
+        return incomplete;
+    }
+
+    public static int bucketFor(double pixelsPerCell) {
+        int bucket = (int) Math.round(Math.log(pixelsPerCell) / Math.log(2));
+        return Math.max(MIN_BUCKET, Math.min(MAX_BUCKET, bucket));
+    }
+
+    private static double cellsPerChunk(int bucket) {
+        return CHUNK_PIXELS / Math.pow(2, bucket);
+    }
+
+    private WritableImage renderChunk(int bucket, int cx, int cy) {
+        double cells = cellsPerChunk(bucket);
+        double left = cx * cells;
+        double top = cy * cells;
+        double chunkZoom = Math.pow(2, bucket) / cellPixels;
+
+        GraphicsContext gc = scratch.getGraphicsContext2D();
+        gc.clearRect(0, 0, CHUNK_PIXELS, CHUNK_PIXELS);
+        gc.save();
+        gc.scale(chunkZoom, chunkZoom);
+        gc.translate(-left * cellPixels, -top * cellPixels);
+        renderer.render(gc, left, top, left + cells, top + cells, chunkZoom);
+        gc.restore();
+
+        return scratch.snapshot(parameters, null);
+    }
+
+    private static class Key {
+        final int bucket;
+        final int x;
+        final int y;
+
+        Key(int bucket, int x, int y) {
+            this.bucket = bucket;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return bucket == other.bucket && x == other.x && y == other.y;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(bucket, x, y);
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package src;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.DoubleConsumer;
+import java.util.zip.Deflater;
+
+public class MapExporter {
+    public static final int BAND_ROWS = 64;
+    public static final int MAX_DIMENSION = 1 << 16;
+    private static final int BACKGROUND_COLOR = 0xFFFFFFFF;
+    private static final int GRID_COLOR = 0xFFD3D3D3;
+    private static final int WALL_COLOR = 0xFF000000;
+    private static final int OVERLAY_COLOR = 0xFF000000;
+    private static final int OUTLINE_COLOR = 0xFF000000;
+    private static final double MIN_GRID_SPACING = 8.0;
+
+    private final double left;
+    private final double top;
+    private final int pixelsPerCell;
+    private final int width;
+    private final int height;
+    private final double wallWidth;
+    private final double tokenInset;
+
+    private final List<double[]> walls = new ArrayList<>();
+    private final List<double[]> overlays = new ArrayList<>();
+    private final List<TokenSprite> tokens = new ArrayList<>();
+
+    public MapExporter(double left, double top, int columns, int rows, int pixelsPerCell,
+                       double wallWidth, double tokenInset) {
+        if ((long) columns * pixelsPerCell > MAX_DIMENSION || (long) rows * pixelsPerCell > MAX_DIMENSION) {
+            throw new IllegalArgumentException("Export is larger than " + MAX_DIMENSION + " pixels per side");
+        }
+        this.left = left;
+        this.top = top;
+        this.pixelsPerCell = pixelsPerCell;
+        this.width = columns * pixelsPerCell;
+        this.height = rows * pixelsPerCell;
+        this.wallWidth = wallWidth;
+        this.tokenInset = tokenInset;
+    }
+
+    public void addWallSegment(double x1, double y1, double x2, double y2) {
+        walls.add(new double[] { x1, y1, x2, y2 });
+    }
+
+    public void addOverlay(double left, double top, double right, double bottom) {
+        overlays.add(new double[] { left, top, right, bottom });
+    }
+
+    public void addToken(double x, double y, int size, int color, String imagePath) {
+        tokens.add(new TokenSprite(x, y, size, color, imagePath));
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    public void export(File file, DoubleConsumer progress) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            export(out, progress);
+        }
+    }
+
+    public void export(OutputStream out, DoubleConsumer progress) throws IOException {
+        loadPortraits();
+
+        int bandCount = (height + BAND_ROWS - 1) / BAND_ROWS;
+        int[][] wallBands = bucket(walls, bandCount, wallWidth / 2);
+        int[][] overlayBands = bucket(overlays, bandCount, 0);
+        List<double[]> tokenBounds = new ArrayList<>(tokens.size());
+        for (TokenSprite token : tokens) {
+            tokenBounds.add(new double[] { token.x, token.y, token.x + token.size, token.y + token.size });
+        }
+        int[][] tokenBands = bucket(tokenBounds, bandCount, 0);
+
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        int window = threads * 2;
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "map-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            PngWriter png = new PngWriter(out, width, height, Deflater.BEST_SPEED);
+            ArrayDeque<Future<int[]>> inFlight = new ArrayDeque<>();
+            int submitted = 0;
+            for (int band = 0; band < bandCount; band++) {
+                while (submitted < bandCount && inFlight.size() < window) {
+                    int next = submitted++;
+                    inFlight.add(pool.submit(() -> renderBand(next, wallBands[next], overlayBands[next], tokenBands[next])));
+                }
+
+                int[] pixels = inFlight.poll().get();
+                int rows = Math.min(BAND_ROWS, height - band * BAND_ROWS);
+                for (int y = 0; y < rows; y++) {
+                    png.writeRow(pixels, y * width);
+                }
+                if (progress != null) {
+                    progress.accept((band + 1) / (double) bandCount);
+                }
+            }
+            png.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to render map region", e.getCause());
+        } finally {
+            pool.shutdownNow();
+            releasePortraits();
+        }
+    }
+
+    // Portraits are decoded here, on the export thread, at the export resolution,
+    // and kept only for this export so the on-screen image cache is left alone.
+    private void loadPortraits() {
+        Map<String, TokenSprite> loaded = new HashMap<>();
+        for (TokenSprite token : tokens) {
+            if (token.imagePath == null) continue;
+
+            int size = TokenImageCache.variantSize(token.size * pixelsPerCell);
+            String key = size + ":" + token.imagePath;
+            TokenSprite source = loaded.get(key);
+            if (source == null) {
+                Image image = new Image(new File(token.imagePath).toURI().toString(), size, size, true, true);
+                if (image.isError()) {
+                    System.err.println("Failed to load image: " + token.imagePath);
+                } else if (image.getPixelReader() != null) {
+                    token.imageWidth = (int) image.getWidth();
+                    token.imageHeight = (int) image.getHeight();
+                    token.pixels = new int[token.imageWidth * token.imageHeight];
+                    image.getPixelReader().getPixels(0, 0, token.imageWidth, token.imageHeight,
+                                                     PixelFormat.getIntArgbInstance(), token.pixels, 0, token.imageWidth);
+                }
+                loaded.put(key, token);
+            } else {
+                token.pixels = source.pixels;
+                token.imageWidth = source.imageWidth;
+                token.imageHeight = source.imageHeight;
+            }
+        }
+    }
+
+    private void releasePortraits() {
+        for (TokenSprite token : tokens) {
+            token.pixels = null;
+        }
+    }
+
+    private int[][] bucket(List<double[]> rects, int bandCount, double padding) {
+        int[] counts = new int[bandCount];
+        int[] first = new int[rects.size()];
+        int[] last = new int[rects.size()];
+        for (int i = 0; i < rects.size(); i++) {
+            double[] rect = rects.get(i);
+            double minY = Math.min(rect[1], rect[3]) - padding;
+            double maxY = Math.max(rect[1], rect[3]) + padding;
+            first[i] = Math.max(0, (int) Math.floor(toPixelY(minY) / BAND_ROWS));
+            last[i] = Math.min(bandCount - 1, (int) Math.floor(toPixelY(maxY) / BAND_ROWS));
+            for (int band = first[i]; band <= last[i]; band++) {
+                counts[band]++;
+            }
+        }
+
+        int[][] bands = new int[bandCount][];
+        for (int band = 0; band < bandCount; band++) {
+            bands[band] = new int[counts[band]];
+            counts[band] = 0;
+        }
+        for (int i = 0; i < rects.size(); i++) {
+            for (int band = first[i]; band <= last[i]; band++) {
+                bands[band][counts[band]++] = i;
+            }
+        }
+        return bands;
+    }
+
+    private int[] renderBand(int band, int[] wallIds, int[] overlayIds, int[] tokenIds) {
+        int y0 = band * BAND_ROWS;
+        int y1 = Math.min(height, y0 + BAND_ROWS);
+        int[] pixels = new int[width * BAND_ROWS];
+        Arrays.fill(pixels, BACKGROUND_COLOR);
+
+        drawGrid(pixels, y0, y1);
+
+        double halfWall = Math.max(0.5, wallWidth * pixelsPerCell / 2);
+        for (int id : wallIds) {
+            double[] wall = walls.get(id);
+            double ax = toPixelX(wall[0]), ay = toPixelY(wall[1]);
+            double bx = toPixelX(wall[2]), by = toPixelY(wall[3]);
+            if (ax == bx || ay == by) {
+                fillRect(pixels, y0, y1, Math.min(ax, bx) - halfWall, Math.min(ay, by) - halfWall,
+                         Math.max(ax, bx) + halfWall, Math.max(ay, by) + halfWall, WALL_COLOR);
+            } else {
+                int steps = (int) Math.ceil(Math.max(Math.abs(bx - ax), Math.abs(by - ay)));
+                for (int i = 0; i <= steps; i++) {
+                    double x = ax + (bx - ax) * i / steps;
+                    double y = ay + (by - ay) * i / steps;
+                    fillRect(pixels, y0, y1, x - halfWall, y - halfWall, x + halfWall, y + halfWall, WALL_COLOR);
+                }
+            }
+        }
+
+        for (int id : overlayIds) {
+            double[] overlay = overlays.get(id);
+            fillRect(pixels, y0, y1, toPixelX(overlay[0]), toPixelY(overlay[1]),
+                     toPixelX(overlay[2]), toPixelY(overlay[3]), OVERLAY_COLOR);
+        }
+
+        for (int id : tokenIds) {
+            drawToken(pixels, y0, y1, tokens.get(id));
+        }
+        return pixels;
+    }
+
+    private void drawGrid(int[] pixels, int y0, int y1) {
+        int step = 1;
+        while (pixelsPerCell * step < MIN_GRID_SPACING && step < MAX_DIMENSION) {
+            step *= 2;
+        }
+
+        int firstColumn = (int) Math.ceil(left / step) * step;
+        for (int column = firstColumn; ; column += step) {
+            int x = (int) Math.round(toPixelX(column));
+            if (x >= width) break;
+            if (x < 0) continue;
+            for (int y = y0; y < y1; y++) {
+                pixels[(y - y0) * width + x] = GRID_COLOR;
+            }
+        }
+
+        int firstRow = (int) Math.ceil(top / step) * step;
+        for (int row = firstRow; ; row += step) {
+            int y = (int) Math.round(toPixelY(row));
+            if (y >= y1) break;
+            if (y < y0) continue;
+            Arrays.fill(pixels, (y - y0) * width, (y - y0 + 1) * width, GRID_COLOR);
+        }
+    }
+
+    private void drawToken(int[] pixels, int y0, int y1, TokenSprite token) {
+        double inset = tokenInset * pixelsPerCell;
+        double sx = toPixelX(token.x) + inset;
+        double sy = toPixelY(token.y) + inset;
+        double extent = token.size * pixelsPerCell - 2 * inset;
+        if (extent <= 0) return;
+
+        int minX = Math.max(0, (int) Math.floor(sx));
+        int maxX = Math.min(width, (int) Math.ceil(sx + extent));
+        int minY = Math.max(y0, (int) Math.floor(sy));
+        int maxY = Math.min(y1, (int) Math.ceil(sy + extent));
+
+        if (token.pixels != null) {
+            for (int y = minY; y < maxY; y++) {
+                int iy = Math.min(token.imageHeight - 1, (int) ((y + 0.5 - sy) / extent * token.imageHeight));
+                if (iy < 0) continue;
+                for (int x = minX; x < maxX; x++) {
+                    int ix = Math.min(token.imageWidth - 1, (int) ((x + 0.5 - sx) / extent * token.imageWidth));
+                    if (ix < 0) continue;
+                    int index = (y - y0) * width + x;
+                    pixels[index] = blend(token.pixels[iy * token.imageWidth + ix], pixels[index]);
+                }
+            }
+            return;
+        }
+
+        double radius = extent / 2;
+        double centerX = sx + radius;
+        double centerY = sy + radius;
+        double stroke = Math.max(1, wallWidth * pixelsPerCell);
+        double outer = (radius + stroke / 2) * (radius + stroke / 2);
+        double inner = Math.max(0, radius - stroke / 2);
+        inner *= inner;
+        minX = Math.max(0, (int) Math.floor(centerX - radius - stroke));
+        maxX = Math.min(width, (int) Math.ceil(centerX + radius + stroke));
+        minY = Math.max(y0, (int) Math.floor(centerY - radius - stroke));
+        maxY = Math.min(y1, (int) Math.ceil(centerY + radius + stroke));
+        for (int y = minY; y < maxY; y++) {
+            double dy = y + 0.5 - centerY;
+            for (int x = minX; x < maxX; x++) {
+                double dx = x + 0.5 - centerX;
+                double distance = dx * dx + dy * dy;
+                if (distance <= inner) {
+                    pixels[(y - y0) * width + x] = token.color;
+                } else if (distance <= outer) {
+                    pixels[(y - y0) * width + x] = OUTLINE_COLOR;
+                }
+            }
+        }
+    }
+
+    private void fillRect(int[] pixels, int y0, int y1, double l, double t, double r, double b, int color) {
+        int minX = (int) Math.round(l);
+        int maxX = Math.max(minX + 1, (int) Math.round(r));
+        minX = Math.max(0, minX);
+        maxX = Math.min(width, maxX);
+        int minY = Math.max(y0, (int) Math.round(t));
+        int maxY = Math.min(y1, (int) Math.round(b));
+        for (int y = minY; y < maxY; y++) {
+            Arrays.fill(pixels, (y - y0) * width + minX, (y - y0) * width + maxX, color);
+        }
+    }
+
+    private static int blend(int source, int destination) {
+        int alpha = source >>> 24;
+        if (alpha == 0xFF) return source;
+        if (alpha == 0) return destination;
+
+        int inverse = 0xFF - alpha;
+        int r = (((source >> 16) & 0xFF) * alpha + ((destination >> 16) & 0xFF) * inverse) / 0xFF;
+        int g = (((source >> 8) & 0xFF) * alpha + ((destination >> 8) & 0xFF) * inverse) / 0xFF;
+        int b = ((source & 0xFF) * alpha + (destination & 0xFF) * inverse) / 0xFF;
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private double toPixelX(double x) {
+        return (x - left) * pixelsPerCell;
+    }
+
+    private double toPixelY(double y) {
+        return (y - top) * pixelsPerCell;
+    }
+
+    private static class TokenSprite {
+        final double x;
+        final double y;
+        final int size;
+        final int color;
+        final String imagePath;
+        int[] pixels;
+        int imageWidth;
+        int imageHeight;
+
+        TokenSprite(double x, double y, int size, int color, String imagePath) {
+            this.x = x;
+            this.y = y;
+            this.size = size;
+            this.color = color;
+            this.imagePath = imagePath;
+        }
+    }
+}
@@ -2,6 +2,10 @@ package src;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 import java.io.File;
 import java.io.FileReader;
@@ -11,9 +15,16 @@ import java.util.List;
 import java.util.ArrayList;
 
 public class MapIO {
-    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private static final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(WallStore.class, new WallStoreAdapter())
+            .setPrettyPrinting()
+            .create();
     
     public static void saveMap(List<Wall> walls, List<Token> tokens, List<Wall> blackOverlays, File file) throws IOException {
+        saveMap(WallStore.fromWalls(walls), tokens, blackOverlays, file);
+    }
+    
+    public static void saveMap(WallStore walls, List<Token> tokens, List<Wall> blackOverlays, File file) throws IOException {
         MapData mapData = new MapData();
         mapData.walls = walls;
         mapData.tokens = tokens;
@@ -34,56 +45,69 @@ public class MapIO {
         }
     }
 
-    public static void saveMap(boolean[][] walls, List<Token> tokens, File file) throws IOException {
-        List<Wall> wallObjects = new ArrayList<>();
-        for (int y = 0; y < walls.length; y++) {
-            for (int x = 0; x < walls[0].length; x++) {
-                if (walls[y][x]) {
-                    wallObjects.add(new Wall(x, y, 1, 1));
-                }
-            }
-        }
-        saveMap(wallObjects, tokens, file);
+    public static void saveMap(OccupancyGrid walls, List<Token> tokens, File file) throws IOException {
+        saveMap(walls.toWalls(), tokens, file);
     }
     
-    public static boolean[][] loadWallsOnly(File file) throws IOException {
+    public static OccupancyGrid loadWallGrid(File file) throws IOException {
         MapData mapData = loadMap(file);
-        if (mapData.walls != null) {
-            double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
-            double maxX = Double.MIN_VALUE, maxY = Double.MIN_VALUE;
-            
-            for (Wall wall : mapData.walls) {
-                minX = Math.min(minX, wall.getLeft());
-                minY = Math.min(minY, wall.getTop());
-                maxX = Math.max(maxX, wall.getRight());
-                maxY = Math.max(maxY, wall.getBottom());
-            }
-            
-            int width = (int) Math.ceil(maxX - minX);
-            int height = (int) Math.ceil(maxY - minY);
-            
-            boolean[][] array = new boolean[height][width];
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    double gridX = minX + x;
-                    double gridY = minY + y;
-                    
-                    for (Wall wall : mapData.walls) {
-                        if (wall.contains(gridX, gridY)) {
-                            array[y][x] = true;
-                            break;
-                        }
-                    }
-                }
-            }
-            return array;
-        }
-        return new boolean[0][0];
+        return OccupancyGrid.fromWalls(mapData.walls);
     }
     
     public static class MapData {
-        public List<Wall> walls;
+        public WallStore walls;
         public List<Token> tokens;
         public List<Wall> blackOverlays;
     }
+
+    private static class WallStoreAdapter extends TypeAdapter<WallStore> {
+        @Override
+        public void write(JsonWriter out, WallStore walls) throws IOException {
+            if (walls == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginArray();
+            for (int slot = 0; slot < walls.getSlotCount(); slot++) {
+                if (walls.getIdAt(slot) < 0) continue;
+
+                out.beginObject();
+                out.name("x").value(walls.getXAt(slot));
+                out.name("y").value(walls.getYAt(slot));
+                out.name("width").value(walls.getWidthAt(slot));
+                out.name("height").value(walls.getHeightAt(slot));
+                out.endObject();
+            }
+            out.endArray();
+        }
+
+        @Override
+        public WallStore read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            WallStore walls = new WallStore();
+            in.beginArray();
+            while (in.hasNext()) {
+                double x = 0, y = 0, width = 0, height = 0;
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "x": x = in.nextDouble(); break;
+                        case "y": y = in.nextDouble(); break;
+                        case "width": width = in.nextDouble(); break;
+                        case "height": height = in.nextDouble(); break;
+                        default: in.skipValue();
+                    }
+                }
+                in.endObject();
+                walls.add(x, y, width, height);
+            }
+            in.endArray();
+            return walls;
+        }
+    }
 } 
\ No newline at end of file
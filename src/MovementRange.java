@@ -0,0 +1,212 @@
+package src;
+
+import javafx.application.Platform;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MovementRange {
+    private static final int CACHE_SIZE = 32;
+    private static final int REACHABLE_COLOR = 0x553399FF;
+    private static final int CANCEL_CHECK_INTERVAL = 1024;
+
+    private final WallConnectivity connectivity;
+    private final Runnable onUpdate;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "movement-range");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private final Map<Key, Field> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Field> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private long cacheVersion = Long.MIN_VALUE;
+    private Future<?> pending;
+    private Key pendingKey;
+
+    public MovementRange(WallConnectivity connectivity, Runnable onUpdate) {
+        this.connectivity = connectivity;
+        this.onUpdate = onUpdate;
+    }
+
+    public Field getField(Token token) {
+        long version = connectivity.getStore().getVersion();
+        if (version != cacheVersion) {
+            cancel();
+            cache.clear();
+            cacheVersion = version;
+        }
+
+        Key key = new Key((int) Math.floor(token.getExactX()), (int) Math.floor(token.getExactY()),
+                          Math.max(1, token.getSize()), token.getSpeed() / PathFinder.FEET_PER_SQUARE);
+        Field field = cache.get(key);
+        if (field == null && !key.equals(pendingKey)) {
+            schedule(key, version);
+        }
+        return field;
+    }
+
+    public void cancel() {
+        generation.incrementAndGet();
+        if (pending != null) {
+            pending.cancel(true);
+        }
+        pending = null;
+        pendingKey = null;
+    }
+
+    private void schedule(Key key, long version) {
+        cancel();
+        int expected = generation.get();
+
+        int left = key.x - key.squares - 1;
+        int top = key.y - key.squares - 1;
+        int size = 2 * key.squares + key.size + 2;
+
+        WallStore store = connectivity.getStore();
+        int[] ids = connectivity.findOverlapping(new Wall(left, top, size, size));
+        double[] rects = new double[ids.length * 4];
+        for (int i = 0; i < ids.length; i++) {
+            rects[i * 4] = store.getLeft(ids[i]);
+            rects[i * 4 + 1] = store.getTop(ids[i]);
+            rects[i * 4 + 2] = store.getRight(ids[i]);
+            rects[i * 4 + 3] = store.getBottom(ids[i]);
+        }
+
+        pendingKey = key;
+        pending = executor.submit(() -> {
+            Field field = compute(key, left, top, size, rects, expected);
+            if (field == null) return;
+
+            Platform.runLater(() -> {
+                if (generation.get() != expected || connectivity.getStore().getVersion() != version) return;
+                cache.put(key, field);
+                pending = null;
+                pendingKey = null;
+                onUpdate.run();
+            });
+        });
+    }
+
+    private Field compute(Key key, int left, int top, int size, double[] rects, int expected) {
+        OccupancyGrid grid = new OccupancyGrid(size, size, left, top);
+        for (int i = 0; i < rects.length; i += 4) {
+            grid.fillCoveredRect(rects[i], rects[i + 1], rects[i + 2], rects[i + 3]);
+        }
+        OccupancyGrid blocked = grid.dilate(key.size);
+
+        int[] distance = new int[size * size];
+        Arrays.fill(distance, -1);
+        int[] queue = new int[size * size];
+        int head = 0, tail = 0;
+
+        int start = (key.y - top) * size + (key.x - left);
+        distance[start] = 0;
+        queue[tail++] = start;
+
+        while (head < tail) {
+            if (head % CANCEL_CHECK_INTERVAL == 0 &&
+                (generation.get() != expected || Thread.currentThread().isInterrupted())) {
+                return null;
+            }
+
+            int cell = queue[head++];
+            int current = distance[cell];
+            if (current >= key.squares) continue;
+
+            int x = cell % size, y = cell / size;
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if (dx == 0 && dy == 0) continue;
+                    int nx = x + dx, ny = y + dy;
+                    if (!isOpen(blocked, size, nx, ny)) continue;
+                    if (dx != 0 && dy != 0 && (!isOpen(blocked, size, x + dx, y) || !isOpen(blocked, size, x, y + dy))) {
+                        continue;
+                    }
+
+                    int next = ny * size + nx;
+                    if (distance[next] >= 0) continue;
+                    distance[next] = current + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        int[] pixels = new int[size * size];
+        for (int i = 0; i < tail; i++) {
+            int x = queue[i] % size, y = queue[i] / size;
+            for (int fy = y; fy < Math.min(size, y + key.size); fy++) {
+                Arrays.fill(pixels, fy * size + x, fy * size + Math.min(size, x + key.size), REACHABLE_COLOR);
+            }
+        }
+        WritableImage image = new WritableImage(size, size);
+        image.getPixelWriter().setPixels(0, 0, size, size, PixelFormat.getIntArgbInstance(), pixels, 0, size);
+        return new Field(left, top, size, size, image);
+    }
+
+    private static boolean isOpen(OccupancyGrid blocked, int size, int x, int y) {
+        return x >= 0 && y >= 0 && x < size && y < size && !blocked.get(x, y);
+    }
+
+    public static class Field {
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+        private final WritableImage image;
+
+        Field(int x, int y, int width, int height, WritableImage image) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.image = image;
+        }
+
+        public int getX() { return x; }
+        public int getY() { return y; }
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+        public WritableImage getImage() { return image; }
+    }
+
+    private static class Key {
+        final int x;
+        final int y;
+        final int size;
+        final int squares;
+
+        Key(int x, int y, int size, int squares) {
+            this.x = x;
+            this.y = y;
+            this.size = size;
+            this.squares = squares;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return x == other.x && y == other.y && size == other.size && squares == other.squares;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(x, y, size, squares);
+        }
+    }
+}
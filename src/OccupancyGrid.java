@@ -0,0 +1,235 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class OccupancyGrid {
+    private static final int WORD_BITS = 64;
+
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] words;
+    private final double originX;
+    private final double originY;
+
+    public OccupancyGrid(int width, int height) {
+        this(width, height, 0, 0);
+    }
+
+    public OccupancyGrid(int width, int height, double originX, double originY) {
+        this.width = Math.max(0, width);
+        this.height = Math.max(0, height);
+        this.wordsPerRow = (this.width + WORD_BITS - 1) / WORD_BITS;
+        this.words = new long[wordsPerRow * this.height];
+        this.originX = originX;
+        this.originY = originY;
+    }
+
+    public static OccupancyGrid fromWalls(WallStore walls) {
+        if (walls == null || walls.isEmpty()) return new OccupancyGrid(0, 0);
+
+        double[] bounds = { Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+        walls.forEach((id, x, y, width, height) -> {
+            bounds[0] = Math.min(bounds[0], x);
+            bounds[1] = Math.min(bounds[1], y);
+            bounds[2] = Math.max(bounds[2], x + width);
+            bounds[3] = Math.max(bounds[3], y + height);
+        });
+
+        int width = (int) Math.ceil(bounds[2] - bounds[0]);
+        int height = (int) Math.ceil(bounds[3] - bounds[1]);
+
+        OccupancyGrid grid = new OccupancyGrid(width, height, bounds[0], bounds[1]);
+        walls.forEach((id, x, y, w, h) -> grid.fillSampledRect(x, y, x + w, y + h));
+        return grid;
+    }
+
+    public List<Wall> toWalls() {
+        List<Wall> walls = new ArrayList<>();
+        for (int y = 0; y < height; y++) {
+            int x = nextSetBit(y, 0);
+            while (x >= 0) {
+                int end = nextClearBit(y, x);
+                walls.add(new Wall(originX + x, originY + y, end - x, 1));
+                x = nextSetBit(y, end);
+            }
+        }
+        return walls;
+    }
+
+    public void fillSampledRect(double left, double top, double right, double bottom) {
+        int x0 = (int) Math.ceil(left - originX);
+        int y0 = (int) Math.ceil(top - originY);
+        int x1 = (int) Math.ceil(right - originX);
+        int y1 = (int) Math.ceil(bottom - originY);
+        fillRect(x0, y0, x1, y1);
+    }
+
+    public void fillCoveredRect(double left, double top, double right, double bottom) {
+        if (right <= left || bottom <= top) return;
+
+        int x0 = (int) Math.floor(left - originX);
+        int y0 = (int) Math.floor(top - originY);
+        int x1 = (int) Math.ceil(right - originX);
+        int y1 = (int) Math.ceil(bottom - originY);
+        fillRect(x0, y0, x1, y1);
+    }
+
+    public void fillRect(int x0, int y0, int x1, int y1) {
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(width, x1);
+        y1 = Math.min(height, y1);
+        if (x0 >= x1 || y0 >= y1) return;
+
+        int firstWord = x0 / WORD_BITS;
+        int lastWord = (x1 - 1) / WORD_BITS;
+        long firstMask = -1L << (x0 % WORD_BITS);
+        long lastMask = -1L >>> (WORD_BITS - 1 - (x1 - 1) % WORD_BITS);
+
+        for (int y = y0; y < y1; y++) {
+            int rowStart = y * wordsPerRow;
+            if (firstWord == lastWord) {
+                words[rowStart + firstWord] |= firstMask & lastMask;
+            } else {
+                words[rowStart + firstWord] |= firstMask;
+                for (int w = firstWord + 1; w < lastWord; w++) {
+                    words[rowStart + w] = -1L;
+                }
+                words[rowStart + lastWord] |= lastMask;
+            }
+        }
+    }
+
+    public void clearRect(int x0, int y0, int x1, int y1) {
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(width, x1);
+        y1 = Math.min(height, y1);
+        if (x0 >= x1 || y0 >= y1) return;
+
+        for (int y = y0; y < y1; y++) {
+            for (int w = x0 / WORD_BITS; w <= (x1 - 1) / WORD_BITS; w++) {
+                words[y * wordsPerRow + w] &= ~wordMask(w, x0, x1);
+            }
+        }
+    }
+
+    public static long wordMask(int wordIndex, int x0, int x1) {
+        int start = Math.max(x0 - wordIndex * WORD_BITS, 0);
+        int end = Math.min(x1 - wordIndex * WORD_BITS, WORD_BITS);
+        if (start >= end) return 0;
+        long mask = -1L << start;
+        return end == WORD_BITS ? mask : mask & ((1L << end) - 1);
+    }
+
+    public OccupancyGrid dilate(int size) {
+        size = Math.max(1, Math.min(WORD_BITS, size));
+        OccupancyGrid horizontal = new OccupancyGrid(width, height, originX, originY);
+        for (int y = 0; y < height; y++) {
+            int rowStart = y * wordsPerRow;
+            for (int w = 0; w < wordsPerRow; w++) {
+                long word = words[rowStart + w];
+                long next = w + 1 < wordsPerRow ? words[rowStart + w + 1] : 0;
+                long merged = word;
+                for (int shift = 1; shift < size; shift++) {
+                    merged |= (word >>> shift) | (next << (WORD_BITS - shift));
+                }
+                horizontal.words[rowStart + w] = merged;
+            }
+        }
+
+        OccupancyGrid result = new OccupancyGrid(width, height, originX, originY);
+        for (int y = 0; y < height; y++) {
+            int rowStart = y * wordsPerRow;
+            for (int dy = 0; dy < size && y + dy < height; dy++) {
+                int sourceStart = (y + dy) * wordsPerRow;
+                for (int w = 0; w < wordsPerRow; w++) {
+                    result.words[rowStart + w] |= horizontal.words[sourceStart + w];
+                }
+            }
+        }
+        return result;
+    }
+
+    public OccupancyGrid transpose() {
+        OccupancyGrid result = new OccupancyGrid(height, width, originY, originX);
+        for (int y = 0; y < height; y++) {
+            for (int x = nextSetBit(y, 0); x >= 0; x = nextSetBit(y, x + 1)) {
+                result.words[x * result.wordsPerRow + y / WORD_BITS] |= 1L << (y % WORD_BITS);
+            }
+        }
+        return result;
+    }
+
+    public boolean get(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) return false;
+        return (words[y * wordsPerRow + x / WORD_BITS] & (1L << (x % WORD_BITS))) != 0;
+    }
+
+    public void set(int x, int y, boolean value) {
+        if (x < 0 || y < 0 || x >= width || y >= height) return;
+        int index = y * wordsPerRow + x / WORD_BITS;
+        long bit = 1L << (x % WORD_BITS);
+        if (value) {
+            words[index] |= bit;
+        } else {
+            words[index] &= ~bit;
+        }
+    }
+
+    public long getWord(int y, int wordIndex) {
+        return words[y * wordsPerRow + wordIndex];
+    }
+
+    public void setWord(int y, int wordIndex, long value) {
+        words[y * wordsPerRow + wordIndex] = value;
+    }
+
+    public long[] copyWords() {
+        return words.clone();
+    }
+
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    public int nextSetBit(int y, int fromX) {
+        if (fromX >= width) return -1;
+        fromX = Math.max(0, fromX);
+
+        int rowStart = y * wordsPerRow;
+        int w = fromX / WORD_BITS;
+        long word = words[rowStart + w] & (-1L << (fromX % WORD_BITS));
+        while (true) {
+            if (word != 0) {
+                int x = w * WORD_BITS + Long.numberOfTrailingZeros(word);
+                return x < width ? x : -1;
+            }
+            if (++w == wordsPerRow) return -1;
+            word = words[rowStart + w];
+        }
+    }
+
+    public int nextClearBit(int y, int fromX) {
+        if (fromX >= width) return width;
+        fromX = Math.max(0, fromX);
+
+        int rowStart = y * wordsPerRow;
+        int w = fromX / WORD_BITS;
+        long word = ~words[rowStart + w] & (-1L << (fromX % WORD_BITS));
+        while (true) {
+            if (word != 0) {
+                return Math.min(width, w * WORD_BITS + Long.numberOfTrailingZeros(word));
+            }
+            if (++w == wordsPerRow) return width;
+            word = ~words[rowStart + w];
+        }
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public double getOriginX() { return originX; }
+    public double getOriginY() { return originY; }
+}
@@ -0,0 +1,123 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class OverlayCoverage {
+    private static final double EPSILON = 1e-9;
+
+    private final RectIndex sources;
+    private final RectIndex pieces;
+    private final Map<Wall, Boolean> known = new IdentityHashMap<>();
+
+    public OverlayCoverage(RectIndex sources, double cellSize) {
+        this.sources = sources;
+        this.pieces = new RectIndex(cellSize);
+    }
+
+    public void rebuild(List<Wall> overlays) {
+        pieces.clear();
+        known.clear();
+        for (Wall overlay : overlays) {
+            add(overlay);
+        }
+    }
+
+    public void add(Wall overlay) {
+        if (known.put(overlay, Boolean.TRUE) != null) return;
+        insert(overlay);
+    }
+
+    public void remove(Wall overlay) {
+        if (known.remove(overlay) == null) return;
+
+        for (Wall piece : pieces.findOverlapping(overlay)) {
+            pieces.remove(piece);
+            for (Wall remainder : piece.subtract(overlay)) {
+                if (remainder.getWidth() > EPSILON && remainder.getHeight() > EPSILON) {
+                    addMerged(remainder);
+                }
+            }
+        }
+        for (Wall source : sources.findOverlapping(overlay)) {
+            if (source != overlay && known.containsKey(source)) {
+                insert(clip(source, overlay));
+            }
+        }
+    }
+
+    public List<Wall> query(double left, double top, double right, double bottom) {
+        return pieces.query(left, top, right, bottom);
+    }
+
+    public List<Wall> getPieces() {
+        return pieces.getAll();
+    }
+
+    private void insert(Wall rect) {
+        List<Wall> fragments = new ArrayList<>();
+        fragments.add(new Wall(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight()));
+        for (Wall piece : pieces.findOverlapping(rect)) {
+            List<Wall> next = new ArrayList<>();
+            for (Wall fragment : fragments) {
+                next.addAll(fragment.subtract(piece));
+            }
+            fragments = next;
+            if (fragments.isEmpty()) return;
+        }
+
+        for (Wall fragment : fragments) {
+            if (fragment.getWidth() > EPSILON && fragment.getHeight() > EPSILON) {
+                addMerged(fragment);
+            }
+        }
+    }
+
+    // Grows the piece into any neighbour that shares a full edge with it, so
+    // repeated adds and erases don't leave the coverage split into slivers.
+    private void addMerged(Wall piece) {
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (Wall neighbour : pieces.query(piece.getLeft() - EPSILON, piece.getTop() - EPSILON,
+                                               piece.getRight() + EPSILON, piece.getBottom() + EPSILON)) {
+                Wall union = mergeEdge(piece, neighbour);
+                if (union != null) {
+                    pieces.remove(neighbour);
+                    piece = union;
+                    merged = true;
+                    break;
+                }
+            }
+        }
+        pieces.add(piece);
+    }
+
+    private static Wall mergeEdge(Wall a, Wall b) {
+        if (same(a.getTop(), b.getTop()) && same(a.getBottom(), b.getBottom()) &&
+            (same(a.getRight(), b.getLeft()) || same(b.getRight(), a.getLeft()))) {
+            double left = Math.min(a.getLeft(), b.getLeft());
+            return new Wall(left, a.getTop(), Math.max(a.getRight(), b.getRight()) - left, a.getHeight());
+        }
+        if (same(a.getLeft(), b.getLeft()) && same(a.getRight(), b.getRight()) &&
+            (same(a.getBottom(), b.getTop()) || same(b.getBottom(), a.getTop()))) {
+            double top = Math.min(a.getTop(), b.getTop());
+            return new Wall(a.getLeft(), top, a.getWidth(), Math.max(a.getBottom(), b.getBottom()) - top);
+        }
+        return null;
+    }
+
+    private static boolean same(double a, double b) {
+        return Math.abs(a - b) < EPSILON;
+    }
+
+    private static Wall clip(Wall rect, Wall area) {
+        double left = Math.max(rect.getLeft(), area.getLeft());
+        double top = Math.max(rect.getTop(), area.getTop());
+        double right = Math.min(rect.getRight(), area.getRight());
+        double bottom = Math.min(rect.getBottom(), area.getBottom());
+        return new Wall(left, top, right - left, bottom - top);
+    }
+}
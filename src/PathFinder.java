@@ -0,0 +1,426 @@
+package src;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class PathFinder {
+    public static final int FEET_PER_SQUARE = 5;
+    private static final int PADDING = 16;
+    private static final long MAX_GRID_CELLS = 1L << 22;
+
+    private final WallStore walls;
+    private OccupancyGrid blocked = new OccupancyGrid(0, 0);
+    private long builtVersion = Long.MIN_VALUE;
+    private double wallLeft, wallTop, wallRight, wallBottom;
+    private int gridX, gridY, gridWidth, gridHeight;
+
+    private final Map<Integer, Clearance> clearance = new HashMap<>();
+    private long[] blockedRows = new long[0];
+    private long[] blockedColumns = new long[0];
+    private int wordsPerRow;
+    private int wordsPerColumn;
+    private int[] stamp = new int[0];
+    private int[] cost = new int[0];
+    private int[] parent = new int[0];
+    private int[] heapIndex = new int[0];
+    private int[] heap = new int[64];
+    private int[] heapKey = new int[64];
+    private int heapSize = 0;
+    private int searchStamp = 0;
+    private int goalX, goalY;
+
+    private int[] pathXs = new int[64];
+    private int[] pathYs = new int[64];
+    private int pathLength = 0;
+    private int pathCost = 0;
+
+    public PathFinder(WallStore walls) {
+        this.walls = walls;
+    }
+
+    // The search only covers start and target plus a margin. When no path is found the margin
+    // doubles, until the window holds every wall (beyond them the map is open) or gets too large.
+    public boolean findPath(int startX, int startY, int targetX, int targetY, int size) {
+        pathLength = 0;
+        pathCost = 0;
+        size = Math.max(1, size);
+        int left = Math.min(startX, targetX), top = Math.min(startY, targetY);
+        int right = Math.max(startX, targetX) + size, bottom = Math.max(startY, targetY) + size;
+
+        for (int margin = PADDING; ; margin *= 2) {
+            if (!ensureGrid(left - margin, top - margin, right + margin, bottom + margin)) return false;
+            useClearance(size);
+            if (!isWalkable(targetX - gridX, targetY - gridY)) return false;
+            if (search(startX, startY, targetX, targetY)) return true;
+            if (coversWalls(size)) return false;
+        }
+    }
+
+    private boolean search(int startX, int startY, int targetX, int targetY) {
+        int sx = startX - gridX, sy = startY - gridY;
+        goalX = targetX - gridX;
+        goalY = targetY - gridY;
+        if (!isWalkable(goalX, goalY)) return false;
+
+        if (++searchStamp == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            searchStamp = 1;
+        }
+        heapSize = 0;
+
+        int start = sy * gridWidth + sx;
+        stamp[start] = searchStamp;
+        cost[start] = 0;
+        parent[start] = -1;
+        push(start, heuristic(sx, sy));
+
+        int goal = goalY * gridWidth + goalX;
+        while (heapSize > 0) {
+            int node = pop();
+            if (node == goal) {
+                buildPath(node);
+                return true;
+            }
+
+            int x = node % gridWidth, y = node / gridWidth;
+            int from = parent[node];
+            if (from < 0) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        if ((dx != 0 || dy != 0) && canStep(x, y, dx, dy)) {
+                            jumpFrom(node, x, y, dx, dy);
+                        }
+                    }
+                }
+                continue;
+            }
+
+            int dx = Integer.signum(x - from % gridWidth);
+            int dy = Integer.signum(y - from / gridWidth);
+            if (dx != 0 && dy != 0) {
+                boolean walkX = isWalkable(x + dx, y);
+                boolean walkY = isWalkable(x, y + dy);
+                if (walkX) jumpFrom(node, x, y, dx, 0);
+                if (walkY) jumpFrom(node, x, y, 0, dy);
+                if (walkX && walkY && isWalkable(x + dx, y + dy)) jumpFrom(node, x, y, dx, dy);
+            } else if (dx != 0) {
+                boolean walkUp = isWalkable(x, y - 1);
+                boolean walkDown = isWalkable(x, y + 1);
+                if (isWalkable(x + dx, y)) {
+                    jumpFrom(node, x, y, dx, 0);
+                    if (walkUp && isWalkable(x + dx, y - 1)) jumpFrom(node, x, y, dx, -1);
+                    if (walkDown && isWalkable(x + dx, y + 1)) jumpFrom(node, x, y, dx, 1);
+                }
+                if (walkUp) jumpFrom(node, x, y, 0, -1);
+                if (walkDown) jumpFrom(node, x, y, 0, 1);
+            } else {
+                boolean walkLeft = isWalkable(x - 1, y);
+                boolean walkRight = isWalkable(x + 1, y);
+                if (isWalkable(x, y + dy)) {
+                    jumpFrom(node, x, y, 0, dy);
+                    if (walkLeft && isWalkable(x - 1, y + dy)) jumpFrom(node, x, y, -1, dy);
+                    if (walkRight && isWalkable(x + 1, y + dy)) jumpFrom(node, x, y, 1, dy);
+                }
+                if (walkLeft) jumpFrom(node, x, y, -1, 0);
+                if (walkRight) jumpFrom(node, x, y, 1, 0);
+            }
+        }
+        return false;
+    }
+
+    public int getPathLength() {
+        return pathLength;
+    }
+
+    public int getPathX(int index) {
+        return pathXs[index];
+    }
+
+    public int getPathY(int index) {
+        return pathYs[index];
+    }
+
+    public int getCostFeet() {
+        return pathCost * FEET_PER_SQUARE;
+    }
+
+    private void jumpFrom(int node, int x, int y, int dx, int dy) {
+        int jumpPoint = dx != 0 && dy != 0 ? jumpDiagonal(x + dx, y + dy, dx, dy)
+                                           : jumpStraight(x + dx, y + dy, dx, dy);
+        if (jumpPoint < 0) return;
+
+        int jx = jumpPoint % gridWidth, jy = jumpPoint / gridWidth;
+        int newCost = cost[node] + Math.max(Math.abs(jx - x), Math.abs(jy - y));
+        if (stamp[jumpPoint] == searchStamp) {
+            if (heapIndex[jumpPoint] < 0 || newCost >= cost[jumpPoint]) return;
+            cost[jumpPoint] = newCost;
+            parent[jumpPoint] = node;
+            decreaseKey(jumpPoint, newCost + heuristic(jx, jy));
+        } else {
+            stamp[jumpPoint] = searchStamp;
+            cost[jumpPoint] = newCost;
+            parent[jumpPoint] = node;
+            push(jumpPoint, newCost + heuristic(jx, jy));
+        }
+    }
+
+    private int jumpStraight(int x, int y, int dx, int dy) {
+        if (dx != 0) {
+            int stop = scan(blockedRows, wordsPerRow, gridWidth, gridHeight, y, x, dx, y == goalY ? goalX : -1);
+            return stop < 0 ? -1 : y * gridWidth + stop;
+        }
+        int stop = scan(blockedColumns, wordsPerColumn, gridHeight, gridWidth, x, y, dy, x == goalX ? goalY : -1);
+        return stop < 0 ? -1 : stop * gridWidth + x;
+    }
+
+    // Walks one line of the bitset a word at a time. A cell stops the jump when it is the goal or
+    // when a neighbouring line opens up right after being blocked (a forced neighbour).
+    private static int scan(long[] bits, int wordsPerLine, int length, int lineCount,
+                            int line, int start, int direction, int goal) {
+        if (start < 0 || start >= length || line < 0 || line >= lineCount) return -1;
+
+        int base = line * wordsPerLine;
+        int before = line > 0 ? base - wordsPerLine : -1;
+        int after = line + 1 < lineCount ? base + wordsPerLine : -1;
+        int w = start >>> 6;
+
+        if (direction > 0) {
+            for (long mask = -1L << start; w < wordsPerLine; w++, mask = -1L) {
+                long a = lineWord(bits, before, w);
+                long b = lineWord(bits, after, w);
+                long aPrevious = w > 0 ? lineWord(bits, before, w - 1) >>> 63 : 1L;
+                long bPrevious = w > 0 ? lineWord(bits, after, w - 1) >>> 63 : 1L;
+                long stops = (~a & ((a << 1) | aPrevious)) | (~b & ((b << 1) | bPrevious));
+                if (goal >= 0 && goal >>> 6 == w) stops |= 1L << goal;
+
+                long blocked = bits[base + w] & mask;
+                stops &= ~bits[base + w] & mask;
+                if (stops != 0 && (blocked == 0 || Long.numberOfTrailingZeros(stops) < Long.numberOfTrailingZeros(blocked))) {
+                    return (w << 6) + Long.numberOfTrailingZeros(stops);
+                }
+                if (blocked != 0) return -1;
+            }
+        } else {
+            for (long mask = -1L >>> (63 - (start & 63)); w >= 0; w--, mask = -1L) {
+                long a = lineWord(bits, before, w);
+                long b = lineWord(bits, after, w);
+                long aNext = w + 1 < wordsPerLine ? lineWord(bits, before, w + 1) << 63 : 1L << 63;
+                long bNext = w + 1 < wordsPerLine ? lineWord(bits, after, w + 1) << 63 : 1L << 63;
+                long stops = (~a & ((a >>> 1) | aNext)) | (~b & ((b >>> 1) | bNext));
+                if (goal >= 0 && goal >>> 6 == w) stops |= 1L << goal;
+
+                long blocked = bits[base + w] & mask;
+                stops &= ~bits[base + w] & mask;
+                if (stops != 0 && (blocked == 0 || Long.numberOfLeadingZeros(stops) < Long.numberOfLeadingZeros(blocked))) {
+                    return (w << 6) + 63 - Long.numberOfLeadingZeros(stops);
+                }
+                if (blocked != 0) return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static long lineWord(long[] bits, int lineStart, int w) {
+        return lineStart < 0 ? -1L : bits[lineStart + w];
+    }
+
+    private int jumpDiagonal(int x, int y, int dx, int dy) {
+        while (isWalkable(x, y)) {
+            if (x == goalX && y == goalY) return y * gridWidth + x;
+            if (jumpStraight(x + dx, y, dx, 0) >= 0 || jumpStraight(x, y + dy, 0, dy) >= 0) {
+                return y * gridWidth + x;
+            }
+            if (!canStep(x, y, dx, dy)) return -1;
+            x += dx;
+            y += dy;
+        }
+        return -1;
+    }
+
+    private boolean canStep(int x, int y, int dx, int dy) {
+        if (!isWalkable(x + dx, y + dy)) return false;
+        return dx == 0 || dy == 0 || (isWalkable(x + dx, y) && isWalkable(x, y + dy));
+    }
+
+    private boolean isWalkable(int x, int y) {
+        if (x < 0 || y < 0 || x >= gridWidth || y >= gridHeight) return false;
+        return (blockedRows[y * wordsPerRow + (x >>> 6)] & (1L << x)) == 0;
+    }
+
+    private int heuristic(int x, int y) {
+        return Math.max(Math.abs(x - goalX), Math.abs(y - goalY));
+    }
+
+    private void buildPath(int goal) {
+        pathCost = cost[goal];
+        int count = 0;
+        for (int node = goal; node >= 0; node = parent[node]) {
+            count++;
+        }
+        if (count > pathXs.length) {
+            pathXs = new int[Math.max(count, pathXs.length * 2)];
+            pathYs = new int[pathXs.length];
+        }
+
+        pathLength = count;
+        for (int node = goal; node >= 0; node = parent[node]) {
+            count--;
+            pathXs[count] = node % gridWidth + gridX;
+            pathYs[count] = node / gridWidth + gridY;
+        }
+    }
+
+    private boolean ensureGrid(int minX, int minY, int maxX, int maxY) {
+        if (walls.getVersion() != builtVersion) {
+            builtVersion = walls.getVersion();
+            wallLeft = wallTop = Double.MAX_VALUE;
+            wallRight = wallBottom = -Double.MAX_VALUE;
+            walls.forEach((id, x, y, width, height) -> {
+                wallLeft = Math.min(wallLeft, x);
+                wallTop = Math.min(wallTop, y);
+                wallRight = Math.max(wallRight, x + width);
+                wallBottom = Math.max(wallBottom, y + height);
+            });
+            gridWidth = 0;
+        }
+
+        if (gridWidth > 0 && minX >= gridX && minY >= gridY &&
+            maxX <= gridX + gridWidth && maxY <= gridY + gridHeight) {
+            return true;
+        }
+
+        long cells = ((long) maxX - minX) * ((long) maxY - minY);
+        if (cells > MAX_GRID_CELLS) return false;
+
+        gridX = minX;
+        gridY = minY;
+        gridWidth = maxX - minX;
+        gridHeight = maxY - minY;
+
+        blocked = new OccupancyGrid(gridWidth, gridHeight, gridX, gridY);
+        walls.forEach((id, x, y, width, height) -> blocked.fillCoveredRect(x, y, x + width, y + height));
+        clearance.clear();
+
+        if (stamp.length < cells) {
+            stamp = new int[(int) cells];
+            cost = new int[(int) cells];
+            parent = new int[(int) cells];
+            heapIndex = new int[(int) cells];
+            searchStamp = 0;
+        }
+        return true;
+    }
+
+    private boolean coversWalls(int size) {
+        if (walls.isEmpty()) return true;
+        return gridX <= Math.floor(wallLeft) - size - 1 && gridY <= Math.floor(wallTop) - size - 1 &&
+               gridX + gridWidth >= Math.ceil(wallRight) + size + 1 && gridY + gridHeight >= Math.ceil(wallBottom) + size + 1;
+    }
+
+    private void useClearance(int size) {
+        Clearance grids = clearance.computeIfAbsent(size, s -> {
+            OccupancyGrid dilated = blocked.dilate(s);
+            OccupancyGrid columns = dilated.transpose();
+            return new Clearance(padded(dilated, gridWidth), padded(columns, gridHeight));
+        });
+        blockedRows = grids.rows;
+        blockedColumns = grids.columns;
+        wordsPerRow = (gridWidth + 63) >>> 6;
+        wordsPerColumn = (gridHeight + 63) >>> 6;
+    }
+
+    private static long[] padded(OccupancyGrid grid, int length) {
+        long[] words = grid.copyWords();
+        int wordsPerLine = grid.getWordsPerRow();
+        if (length % 64 == 0) return words;
+
+        long padding = -1L << (length % 64);
+        for (int i = wordsPerLine - 1; i < words.length; i += wordsPerLine) {
+            words[i] |= padding;
+        }
+        return words;
+    }
+
+    private void push(int node, int key) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+            heapKey = Arrays.copyOf(heapKey, heapSize * 2);
+        }
+        heap[heapSize] = node;
+        heapKey[heapSize] = key;
+        heapIndex[node] = heapSize;
+        siftUp(heapSize++);
+    }
+
+    private int pop() {
+        int node = heap[0];
+        heapIndex[node] = -1;
+        if (--heapSize > 0) {
+            heap[0] = heap[heapSize];
+            heapKey[0] = heapKey[heapSize];
+            heapIndex[heap[0]] = 0;
+            siftDown(0);
+        }
+        return node;
+    }
+
+    private void decreaseKey(int node, int key) {
+        int index = heapIndex[node];
+        heapKey[index] = key;
+        siftUp(index);
+    }
+
+    private void siftUp(int index) {
+        int node = heap[index];
+        int key = heapKey[index];
+        while (index > 0) {
+            int up = (index - 1) >> 1;
+            if (!before(key, node, heapKey[up], heap[up])) break;
+            move(up, index);
+            index = up;
+        }
+        heap[index] = node;
+        heapKey[index] = key;
+        heapIndex[node] = index;
+    }
+
+    private void siftDown(int index) {
+        int node = heap[index];
+        int key = heapKey[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && before(heapKey[child + 1], heap[child + 1], heapKey[child], heap[child])) {
+                child++;
+            }
+            if (!before(heapKey[child], heap[child], key, node)) break;
+            move(child, index);
+            index = child;
+        }
+        heap[index] = node;
+        heapKey[index] = key;
+        heapIndex[node] = index;
+    }
+
+    private boolean before(int keyA, int nodeA, int keyB, int nodeB) {
+        if (keyA != keyB) return keyA < keyB;
+        return cost[nodeA] > cost[nodeB];
+    }
+
+    private void move(int from, int to) {
+        heap[to] = heap[from];
+        heapKey[to] = heapKey[from];
+        heapIndex[heap[to]] = to;
+    }
+
+    private static class Clearance {
+        final long[] rows;
+        final long[] columns;
+
+        Clearance(long[] rows, long[] columns) {
+            this.rows = rows;
+            this.columns = columns;
+        }
+    }
+}
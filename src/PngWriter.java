@@ -0,0 +1,139 @@
+package src;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+public class PngWriter implements AutoCloseable {
+    private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    private static final int IDAT_SIZE = 1 << 16;
+    private static final int FILTER_UP = 2;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+    private final Deflater deflater;
+    private final DeflaterOutputStream idat;
+    private final byte[] row;
+    private final byte[] previous;
+    private int rowsWritten = 0;
+
+    public PngWriter(OutputStream out, int width, int height, int compressionLevel) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        this.row = new byte[1 + width * 3];
+        this.previous = new byte[width * 3];
+
+        this.out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8;
+        header[9] = 2;
+        writeChunk("IHDR", header, header.length);
+
+        deflater = new Deflater(compressionLevel);
+        idat = new DeflaterOutputStream(new IdatStream(), deflater, IDAT_SIZE);
+    }
+
+    public void writeRow(int[] argb, int offset) throws IOException {
+        if (rowsWritten >= height) {
+            throw new IllegalStateException("All " + height + " rows have already been written");
+        }
+
+        row[0] = FILTER_UP;
+        for (int x = 0, i = 1; x < width; x++, i += 3) {
+            int pixel = argb[offset + x];
+            byte r = (byte) (pixel >> 16);
+            byte g = (byte) (pixel >> 8);
+            byte b = (byte) pixel;
+            int p = i - 1;
+            row[i] = (byte) (r - previous[p]);
+            row[i + 1] = (byte) (g - previous[p + 1]);
+            row[i + 2] = (byte) (b - previous[p + 2]);
+            previous[p] = r;
+            previous[p + 1] = g;
+            previous[p + 2] = b;
+        }
+        idat.write(row);
+        rowsWritten++;
+    }
+
+    public int getRowsWritten() {
+        return rowsWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (rowsWritten != height) {
+            throw new IllegalStateException("Expected " + height + " rows but " + rowsWritten + " were written");
+        }
+        idat.close();
+        deflater.end();
+        writeChunk("IEND", new byte[0], 0);
+        out.flush();
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private class IdatStream extends OutputStream {
+        private final byte[] buffer = new byte[IDAT_SIZE];
+        private int count = 0;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+                int n = Math.min(length, buffer.length - count);
+                System.arraycopy(data, offset, buffer, count, n);
+                count += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flushChunk();
+        }
+
+        private void flushChunk() throws IOException {
+            if (count > 0) {
+                writeChunk("IDAT", buffer, count);
+                count = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package src;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RectIndex {
+    private final SpatialGrid grid;
+    private final List<Wall> rectsById = new ArrayList<>();
+    private final Map<Wall, Integer> idOf = new IdentityHashMap<>();
+    private final ArrayDeque<Integer> freeIds = new ArrayDeque<>();
+
+    public RectIndex(double cellSize) {
+        this.grid = new SpatialGrid(cellSize);
+    }
+
+    public void rebuild(List<Wall> rects) {
+        clear();
+        for (Wall rect : rects) {
+            add(rect);
+        }
+    }
+
+    public void clear() {
+        grid.clear();
+        rectsById.clear();
+        idOf.clear();
+        freeIds.clear();
+    }
+
+    public void add(Wall rect) {
+        if (idOf.containsKey(rect)) return;
+
+        int id;
+        if (freeIds.isEmpty()) {
+            id = rectsById.size();
+            rectsById.add(rect);
+        } else {
+            id = freeIds.pop();
+            rectsById.set(id, rect);
+        }
+        idOf.put(rect, id);
+        grid.insert(id, rect.getLeft(), rect.getTop(), rect.getRight(), rect.getBottom());
+    }
+
+    public void remove(Wall rect) {
+        Integer id = idOf.remove(rect);
+        if (id == null) return;
+
+        grid.remove(id);
+        rectsById.set(id, null);
+        freeIds.push(id);
+    }
+
+    public List<Wall> query(double left, double top, double right, double bottom) {
+        List<Wall> result = new ArrayList<>();
+        grid.query(left, top, right, bottom, id -> result.add(rectsById.get(id)));
+        return result;
+    }
+
+    public List<Wall> findOverlapping(Wall area) {
+        List<Wall> result = new ArrayList<>();
+        grid.query(area.getLeft(), area.getTop(), area.getRight(), area.getBottom(), id -> {
+            Wall rect = rectsById.get(id);
+            if (rect.overlaps(area)) {
+                result.add(rect);
+            }
+        });
+        return result;
+    }
+
+    public List<Wall> getAll() {
+        return new ArrayList<>(idOf.keySet());
+    }
+}
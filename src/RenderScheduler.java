@@ -0,0 +1,58 @@
+package src;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+public class RenderScheduler {
+    public enum Layer {
+        BACKGROUND, WALLS, OVERLAYS, TOKENS, PREVIEW
+    }
+
+    private final Consumer<Set<Layer>> renderer;
+    private final EnumSet<Layer> dirty = EnumSet.noneOf(Layer.class);
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            pulse();
+        }
+    };
+    private boolean running = false;
+
+    public RenderScheduler(Consumer<Set<Layer>> renderer) {
+        this.renderer = renderer;
+    }
+
+    public void request(Layer layer, Layer... more) {
+        dirty.add(layer);
+        Collections.addAll(dirty, more);
+        start();
+    }
+
+    public void requestAll() {
+        dirty.addAll(EnumSet.allOf(Layer.class));
+        start();
+    }
+
+    private void start() {
+        if (!running) {
+            running = true;
+            timer.start();
+        }
+    }
+
+    private void pulse() {
+        if (dirty.isEmpty()) {
+            timer.stop();
+            running = false;
+            return;
+        }
+
+        Set<Layer> layers = EnumSet.copyOf(dirty);
+        dirty.clear();
+        renderer.accept(layers);
+    }
+}
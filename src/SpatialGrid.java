@@ -0,0 +1,204 @@
+package src;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+public class SpatialGrid {
+    private static final int MAX_CELLS_PER_ENTRY = 256;
+
+    private final double cellSize;
+    private final Map<Long, Bucket> buckets = new HashMap<>();
+    private final Bucket oversized = new Bucket();
+
+    private double[] minXs = new double[16];
+    private double[] minYs = new double[16];
+    private double[] maxXs = new double[16];
+    private double[] maxYs = new double[16];
+    private boolean[] present = new boolean[16];
+    private int[] seen = new int[16];
+    private int queryStamp = 0;
+    private int count = 0;
+
+    public SpatialGrid(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    public void insert(int id, double minX, double minY, double maxX, double maxY) {
+        if (id < present.length && present[id]) {
+            remove(id);
+        }
+        ensureCapacity(id + 1);
+
+        minXs[id] = minX;
+        minYs[id] = minY;
+        maxXs[id] = maxX;
+        maxYs[id] = maxY;
+        present[id] = true;
+        count++;
+
+        if (isOversized(id)) {
+            oversized.add(id);
+            return;
+        }
+
+        int cx0 = cell(minX), cy0 = cell(minY);
+        int cx1 = cell(maxX), cy1 = cell(maxY);
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                buckets.computeIfAbsent(key(cx, cy), k -> new Bucket()).add(id);
+            }
+        }
+    }
+
+    public void remove(int id) {
+        if (id >= present.length || !present[id]) {
+            return;
+        }
+        present[id] = false;
+        count--;
+
+        if (isOversized(id)) {
+            oversized.remove(id);
+            return;
+        }
+
+        int cx0 = cell(minXs[id]), cy0 = cell(minYs[id]);
+        int cx1 = cell(maxXs[id]), cy1 = cell(maxYs[id]);
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                long key = key(cx, cy);
+                Bucket bucket = buckets.get(key);
+                if (bucket != null) {
+                    bucket.remove(id);
+                    if (bucket.size == 0) {
+                        buckets.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        buckets.clear();
+        oversized.size = 0;
+        Arrays.fill(present, false);
+        count = 0;
+    }
+
+    public boolean contains(int id) {
+        return id < present.length && present[id];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void query(double minX, double minY, double maxX, double maxY, IntConsumer consumer) {
+        queryStamp++;
+        if (queryStamp == Integer.MAX_VALUE) {
+            Arrays.fill(seen, 0);
+            queryStamp = 1;
+        }
+
+        for (int i = 0; i < oversized.size; i++) {
+            visit(oversized.items[i], minX, minY, maxX, maxY, consumer);
+        }
+
+        int cx0 = cell(minX), cy0 = cell(minY);
+        int cx1 = cell(maxX), cy1 = cell(maxY);
+        if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > buckets.size()) {
+            for (Bucket bucket : buckets.values()) {
+                for (int i = 0; i < bucket.size; i++) {
+                    visit(bucket.items[i], minX, minY, maxX, maxY, consumer);
+                }
+            }
+            return;
+        }
+
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                Bucket bucket = buckets.get(key(cx, cy));
+                if (bucket == null) continue;
+                for (int i = 0; i < bucket.size; i++) {
+                    visit(bucket.items[i], minX, minY, maxX, maxY, consumer);
+                }
+            }
+        }
+    }
+
+    public void forEachInCell(int cx, int cy, IntConsumer consumer) {
+        Bucket bucket = buckets.get(key(cx, cy));
+        if (bucket == null) return;
+        for (int i = 0; i < bucket.size; i++) {
+            consumer.accept(bucket.items[i]);
+        }
+    }
+
+    public void forEachOversized(IntConsumer consumer) {
+        for (int i = 0; i < oversized.size; i++) {
+            consumer.accept(oversized.items[i]);
+        }
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    private void visit(int id, double minX, double minY, double maxX, double maxY, IntConsumer consumer) {
+        if (seen[id] == queryStamp) return;
+        seen[id] = queryStamp;
+
+        if (maxXs[id] >= minX && minXs[id] <= maxX && maxYs[id] >= minY && minYs[id] <= maxY) {
+            consumer.accept(id);
+        }
+    }
+
+    private boolean isOversized(int id) {
+        long cellsWide = cell(maxXs[id]) - cell(minXs[id]) + 1L;
+        long cellsHigh = cell(maxYs[id]) - cell(minYs[id]) + 1L;
+        return cellsWide * cellsHigh > MAX_CELLS_PER_ENTRY;
+    }
+
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= present.length) return;
+
+        int newLength = Math.max(capacity, present.length * 2);
+        minXs = Arrays.copyOf(minXs, newLength);
+        minYs = Arrays.copyOf(minYs, newLength);
+        maxXs = Arrays.copyOf(maxXs, newLength);
+        maxYs = Arrays.copyOf(maxYs, newLength);
+        present = Arrays.copyOf(present, newLength);
+        seen = Arrays.copyOf(seen, newLength);
+    }
+
+    private static class Bucket {
+        int[] items = new int[4];
+        int size = 0;
+
+        void add(int id) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = id;
+        }
+
+        void remove(int id) {
+            for (int i = 0; i < size; i++) {
+                if (items[i] == id) {
+                    items[i] = items[--size];
+                    return;
+                }
+            }
+        }
+    }
+}
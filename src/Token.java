@@ -3,11 +3,14 @@ package src;
 import javafx.scene.paint.Color;
 import javafx.scene.image.Image;
 import java.awt.Point;
-import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public class Token {
+    public static final int DEFAULT_SPEED = 30;
+    private static final int PREVIEW_IMAGE_SIZE = 128;
+
     public enum Type {
         PLAYER("Player", Color.BLUE),
         ENEMY("Enemy", Color.RED),
@@ -34,8 +37,9 @@ public class Token {
     private Type type;
     private String name;
     private int size;
+    private int speed = DEFAULT_SPEED;
     private String imagePath;
-    private Image customImage;
+    private transient Image customImage;
     private String layerCategory = "Default";
     
     public Token(Point position, Type type, String name, int size) {
@@ -57,21 +61,6 @@ public class Token {
         this.name = name;
         this.size = size;
         this.imagePath = imagePath;
-        loadImage();
-    }
-    
-    private void loadImage() {
-        if (imagePath != null && !imagePath.isEmpty()) {
-            try {
-                File file = new File(imagePath);
-                if (file.exists()) {
-                    customImage = new Image(file.toURI().toString());
-                }
-            } catch (Exception e) {
-                System.err.println("Failed to load image: " + imagePath);
-                e.printStackTrace();
-            }
-        }
     }
 
     public Point getPosition() { return position; }
@@ -100,15 +89,25 @@ public class Token {
     
     public int getSize() { return size; }
     public void setSize(int size) { this.size = size; }
+
+    public int getSpeed() { return speed > 0 ? speed : DEFAULT_SPEED; }
+    public void setSpeed(int speed) { this.speed = speed; }
     
     public String getImagePath() { return imagePath; }
     public void setImagePath(String imagePath) { 
         this.imagePath = imagePath;
-        loadImage();
+        this.customImage = null;
     }
     
-    public Image getCustomImage() { return customImage; }
-    public boolean hasCustomImage() { return customImage != null; }
+    public Image getCustomImage() { return getImage(PREVIEW_IMAGE_SIZE); }
+    public boolean hasCustomImage() {
+        return customImage != null || TokenImageCache.shared().hasImage(imagePath);
+    }
+
+    public Image getImage(double pixelSize) {
+        if (customImage != null) return customImage;
+        return TokenImageCache.shared().getImage(imagePath, pixelSize);
+    }
     
     public void setCustomImage(Image image) {
         this.customImage = image;
@@ -130,4 +129,65 @@ public class Token {
     public boolean isInLayer(String category) {
         return layerCategory.equals(category);
     }
+
+    public State captureState() {
+        return new State(this);
+    }
+
+    public void applyState(State state) {
+        position = new Point(state.x, state.y);
+        fractionalX = state.fractionalX;
+        fractionalY = state.fractionalY;
+        type = state.type;
+        setName(state.name);
+        size = state.size;
+        speed = state.speed;
+        if (!Objects.equals(imagePath, state.imagePath)) {
+            setImagePath(state.imagePath);
+        }
+        setLayerCategory(state.layerCategory);
+    }
+
+    public static class State {
+        private final int x;
+        private final int y;
+        private final double fractionalX;
+        private final double fractionalY;
+        private final Type type;
+        private final String name;
+        private final int size;
+        private final int speed;
+        private final String imagePath;
+        private final String layerCategory;
+
+        private State(Token token) {
+            this.x = token.position.x;
+            this.y = token.position.y;
+            this.fractionalX = token.fractionalX;
+            this.fractionalY = token.fractionalY;
+            this.type = token.type;
+            this.name = token.name;
+            this.size = token.size;
+            this.speed = token.speed;
+            this.imagePath = token.imagePath;
+            this.layerCategory = token.layerCategory;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof State)) return false;
+            State other = (State) o;
+            return x == other.x && y == other.y && size == other.size && speed == other.speed &&
+                   Double.compare(fractionalX, other.fractionalX) == 0 &&
+                   Double.compare(fractionalY, other.fractionalY) == 0 &&
+                   type == other.type && Objects.equals(name, other.name) &&
+                   Objects.equals(imagePath, other.imagePath) && Objects.equals(layerCategory, other.layerCategory);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(x, y, fractionalX, fractionalY, type, name, size, speed, imagePath, layerCategory);
+        }
+    }
 } 
\ No newline at end of file
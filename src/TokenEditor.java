@@ -23,6 +23,7 @@ public class TokenEditor {
     private ComboBox<Token.Type> typeCombo;
     private ComboBox<String> layerCombo;
     private Spinner<Integer> sizeSpinner;
+    private Spinner<Integer> speedSpinner;
     private ImageView imagePreview;
     private Label imagePathLabel;
     private String selectedImagePath;
@@ -58,6 +59,10 @@ public class TokenEditor {
         sizeSpinner = new Spinner<>(1, 10, token.getSize());
         sizeSpinner.setEditable(true);
 
+        Label speedLabel = new Label("Speed (ft):");
+        speedSpinner = new Spinner<>(5, 300, token.getSpeed(), 5);
+        speedSpinner.setEditable(true);
+
         Label imageLabel = new Label("Custom Image:");
         HBox imageBox = new HBox(10);
         
@@ -78,7 +83,12 @@ public class TokenEditor {
         imagePathLabel.setWrapText(true);
 
         if (token.hasCustomImage()) {
-            imagePreview.setImage(token.getCustomImage());
+            Image image = token.getCustomImage();
+            if (image != null) {
+                imagePreview.setImage(image);
+            } else {
+                TokenImageCache.shared().requestImage(token.getImagePath(), 128, imagePreview::setImage);
+            }
             imagePathLabel.setText(token.getImagePath());
             selectedImagePath = token.getImagePath();
         }
@@ -109,10 +119,12 @@ public class TokenEditor {
         grid.add(layerCombo, 1, 2);
         grid.add(sizeLabel, 0, 3);
         grid.add(sizeSpinner, 1, 3);
-        grid.add(imageLabel, 0, 4);
-        grid.add(imageBox, 1, 4);
-        grid.add(imagePreview, 0, 5);
-        grid.add(imagePathLabel, 1, 5);
+        grid.add(speedLabel, 0, 4);
+        grid.add(speedSpinner, 1, 4);
+        grid.add(imageLabel, 0, 5);
+        grid.add(imageBox, 1, 5);
+        grid.add(imagePreview, 0, 6);
+        grid.add(imagePathLabel, 1, 6);
         
         root.getChildren().addAll(grid, buttonBox);
         
@@ -136,16 +148,21 @@ public class TokenEditor {
             selectedImagePath = selectedFile.getAbsolutePath();
             imagePathLabel.setText(selectedImagePath);
             
-            try {
-                Image image = new Image(selectedFile.toURI().toString());
-                imagePreview.setImage(image);
-            } catch (Exception e) {
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.setTitle("Error");
-                alert.setHeaderText("Failed to load image");
-                alert.setContentText("The selected file could not be loaded as an image.");
-                alert.showAndWait();
-            }
+            String requestedPath = selectedImagePath;
+            TokenImageCache.shared().invalidate(requestedPath);
+            TokenImageCache.shared().requestImage(requestedPath, imagePreview.getFitWidth(), image -> {
+                if (!requestedPath.equals(selectedImagePath)) return;
+
+                if (image != null) {
+                    imagePreview.setImage(image);
+                } else {
+                    Alert alert = new Alert(Alert.AlertType.ERROR);
+                    alert.setTitle("Error");
+                    alert.setHeaderText("Failed to load image");
+                    alert.setContentText("The selected file could not be loaded as an image.");
+                    alert.showAndWait();
+                }
+            });
         }
     }
     
@@ -160,6 +177,7 @@ public class TokenEditor {
         token.setType(typeCombo.getValue());
         token.setLayerCategory(layerCombo.getValue());
         token.setSize(sizeSpinner.getValue());
+        token.setSpeed(speedSpinner.getValue());
         token.setImagePath(selectedImagePath);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,224 @@
+package src;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+public class TokenImageCache {
+    private static final long DEFAULT_BUDGET_BYTES = 64L * 1024 * 1024;
+    private static final int MIN_VARIANT_SIZE = 16;
+    private static final int MAX_VARIANT_SIZE = 2048;
+    private static final int LOADER_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    private static final TokenImageCache SHARED = new TokenImageCache(DEFAULT_BUDGET_BYTES);
+
+    private final Map<String, Image> variants = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Boolean> available = new HashMap<>();
+    // Variants drawn in the current or previous frame stay cached even over budget,
+    // so a screen full of large portraits doesn't evict and re-decode itself.
+    private Set<String> frameKeys = new HashSet<>();
+    private Set<String> lastFrameKeys = new HashSet<>();
+    private long budgetBytes;
+    private long usedBytes = 0;
+
+    private final ExecutorService loader = Executors.newFixedThreadPool(LOADER_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "token-image-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, List<Consumer<Image>>> pending = new HashMap<>();
+    private final List<Runnable> loadListeners = new CopyOnWriteArrayList<>();
+    private boolean batchLoaded = false;
+
+    public TokenImageCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    public static TokenImageCache shared() {
+        return SHARED;
+    }
+
+    public synchronized boolean hasImage(String path) {
+        if (path == null || path.isEmpty()) return false;
+
+        Boolean known = available.get(path);
+        if (known == null) {
+            known = new File(path).isFile();
+            available.put(path, known);
+        }
+        return known;
+    }
+
+    public synchronized void beginFrame() {
+        lastFrameKeys = frameKeys;
+        frameKeys = new HashSet<>();
+        evict();
+    }
+
+    public synchronized Image getImage(String path, double pixelSize) {
+        if (!hasImage(path)) return null;
+
+        int size = variantSize(pixelSize);
+        String key = size + ":" + path;
+        frameKeys.add(key);
+        Image image = variants.get(key);
+        if (image == null) {
+            load(key, path, size, null);
+        }
+        return image;
+    }
+
+    public synchronized void requestImage(String path, double pixelSize, Consumer<Image> callback) {
+        if (!hasImage(path)) {
+            Platform.runLater(() -> callback.accept(null));
+            return;
+        }
+
+        int size = variantSize(pixelSize);
+        String key = size + ":" + path;
+        Image image = variants.get(key);
+        if (image != null) {
+            Platform.runLater(() -> callback.accept(image));
+        } else {
+            load(key, path, size, callback);
+        }
+    }
+
+    public void addLoadListener(Runnable listener) {
+        loadListeners.add(listener);
+    }
+
+    public void removeLoadListener(Runnable listener) {
+        loadListeners.remove(listener);
+    }
+
+    public synchronized boolean isLoading() {
+        return !pending.isEmpty();
+    }
+
+    private void load(String key, String path, int size, Consumer<Image> callback) {
+        List<Consumer<Image>> waiting = pending.get(key);
+        if (waiting == null) {
+            waiting = new ArrayList<>();
+            pending.put(key, waiting);
+            loader.execute(() -> decode(key, path, size));
+        }
+        if (callback != null) {
+            waiting.add(callback);
+        }
+    }
+
+    private void decode(String key, String path, int size) {
+        Image decoded = new Image(new File(path).toURI().toString(), size, size, true, true);
+        if (decoded.isError()) {
+            System.err.println("Failed to load image: " + path);
+            decoded = null;
+        }
+
+        Image image = decoded;
+        List<Consumer<Image>> callbacks;
+        boolean notify;
+        synchronized (this) {
+            callbacks = pending.remove(key);
+            if (image == null) {
+                available.put(path, false);
+            } else {
+                store(key, image);
+                batchLoaded = true;
+            }
+            notify = pending.isEmpty() && batchLoaded;
+            if (notify) {
+                batchLoaded = false;
+            }
+        }
+
+        if ((callbacks != null && !callbacks.isEmpty()) || notify) {
+            Platform.runLater(() -> {
+                if (callbacks != null) {
+                    for (Consumer<Image> callback : callbacks) {
+                        callback.accept(image);
+                    }
+                }
+                if (notify) {
+                    for (Runnable listener : loadListeners) {
+                        listener.run();
+                    }
+                }
+            });
+        }
+    }
+
+    public synchronized void invalidate(String path) {
+        available.remove(path);
+        Iterator<Map.Entry<String, Image>> iterator = variants.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Image> entry = iterator.next();
+            if (entry.getKey().endsWith(":" + path)) {
+                usedBytes -= sizeOf(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        evict();
+    }
+
+    public synchronized long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int getVariantCount() {
+        return variants.size();
+    }
+
+    public static int variantSize(double pixelSize) {
+        int size = MIN_VARIANT_SIZE;
+        while (size < pixelSize && size < MAX_VARIANT_SIZE) {
+            size *= 2;
+        }
+        return size;
+    }
+
+    private void store(String key, Image image) {
+        Image previous = variants.put(key, image);
+        if (previous != null) {
+            usedBytes -= sizeOf(previous);
+        }
+        usedBytes += sizeOf(image);
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Image>> iterator = variants.entrySet().iterator();
+        while (usedBytes > budgetBytes && iterator.hasNext()) {
+            Map.Entry<String, Image> entry = iterator.next();
+            if (frameKeys.contains(entry.getKey()) || lastFrameKeys.contains(entry.getKey())) continue;
+
+            usedBytes -= sizeOf(entry.getValue());
+            iterator.remove();
+        }
+    }
+
+    private static long sizeOf(Image image) {
+        return (long) Math.ceil(image.getWidth()) * (long) Math.ceil(image.getHeight()) * 4;
+    }
+}
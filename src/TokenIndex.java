@@ -0,0 +1,121 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+public class TokenIndex {
+    private final double cellSize;
+    private final Map<String, SpatialGrid> layers = new HashMap<>();
+    // Ids are handed out in insertion order and never reused, so sorting a query
+    // result by id gives the same draw order as the token list.
+    private final List<Token> tokensById = new ArrayList<>();
+    private final List<String> layerById = new ArrayList<>();
+    private final Map<Token, Integer> idOf = new IdentityHashMap<>();
+    private int[] found = new int[64];
+    private int foundCount = 0;
+
+    public TokenIndex(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    public void rebuild(List<Token> tokens) {
+        clear();
+        for (Token token : tokens) {
+            add(token);
+        }
+    }
+
+    public void clear() {
+        layers.clear();
+        tokensById.clear();
+        layerById.clear();
+        idOf.clear();
+    }
+
+    public void add(Token token) {
+        if (idOf.containsKey(token)) return;
+
+        int id = tokensById.size();
+        tokensById.add(token);
+        layerById.add(null);
+        idOf.put(token, id);
+        insert(id, token);
+    }
+
+    public void update(Token token) {
+        Integer id = idOf.get(token);
+        if (id == null) {
+            add(token);
+            return;
+        }
+
+        String layer = layerById.get(id);
+        if (!layer.equals(token.getLayerCategory())) {
+            layers.get(layer).remove(id);
+        }
+        insert(id, token);
+    }
+
+    public void remove(Token token) {
+        Integer id = idOf.remove(token);
+        if (id == null) return;
+
+        layers.get(layerById.get(id)).remove(id);
+        tokensById.set(id, null);
+        layerById.set(id, null);
+    }
+
+    public void query(double left, double top, double right, double bottom, Consumer<Token> consumer) {
+        for (String layer : layers.keySet()) {
+            query(layer, left, top, right, bottom, consumer);
+        }
+    }
+
+    public List<Token> query(double left, double top, double right, double bottom) {
+        List<Token> result = new ArrayList<>();
+        query(left, top, right, bottom, result::add);
+        return result;
+    }
+
+    public void query(String layer, double left, double top, double right, double bottom, Consumer<Token> consumer) {
+        SpatialGrid grid = layers.get(layer);
+        if (grid == null) return;
+
+        foundCount = 0;
+        grid.query(left, top, right, bottom, id -> {
+            if (foundCount == found.length) {
+                found = Arrays.copyOf(found, foundCount * 2);
+            }
+            found[foundCount++] = id;
+        });
+
+        Arrays.sort(found, 0, foundCount);
+        int[] ids = Arrays.copyOf(found, foundCount);
+        for (int id : ids) {
+            consumer.accept(tokensById.get(id));
+        }
+    }
+
+    public boolean contains(Token token) {
+        return idOf.containsKey(token);
+    }
+
+    public int size() {
+        return idOf.size();
+    }
+
+    private void insert(int id, Token token) {
+        String layer = token.getLayerCategory();
+        layerById.set(id, layer);
+
+        double x = token.getExactX();
+        double y = token.getExactY();
+        int size = Math.max(1, token.getSize());
+        layers.computeIfAbsent(layer, l -> new SpatialGrid(cellSize)).insert(id, x, y, x + size, y + size);
+    }
+}
@@ -0,0 +1,111 @@
+package src;
+
+import javafx.geometry.Bounds;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class TokenLabelCache {
+    public static final int MAX_LABEL_LENGTH = 8;
+    private static final int MAX_LABELS = 1024;
+    private static final int MAX_RENDERS_PER_FRAME = 64;
+    private static final double MIN_SCALE = 0.25;
+    private static final double MAX_SCALE = 8.0;
+
+    private static final TokenLabelCache SHARED = new TokenLabelCache();
+
+    private final Map<String, Label> labels = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Label> eldest) {
+            return size() > MAX_LABELS;
+        }
+    };
+    private final SnapshotParameters parameters = new SnapshotParameters();
+    private int rendersLeft = MAX_RENDERS_PER_FRAME;
+
+    public TokenLabelCache() {
+        parameters.setFill(Color.TRANSPARENT);
+    }
+
+    public static TokenLabelCache shared() {
+        return SHARED;
+    }
+
+    public static String labelText(String name) {
+        if (name == null) return "";
+        return name.length() > MAX_LABEL_LENGTH ? name.substring(0, MAX_LABEL_LENGTH) : name;
+    }
+
+    public static double bucketScale(double zoom) {
+        double scale = MIN_SCALE;
+        while (scale < zoom && scale < MAX_SCALE) {
+            scale *= 2;
+        }
+        return scale;
+    }
+
+    public synchronized void beginFrame() {
+        rendersLeft = MAX_RENDERS_PER_FRAME;
+    }
+
+    public synchronized void draw(GraphicsContext gc, String name, double x, double baselineY, double zoom) {
+        String text = labelText(name);
+        if (text.isEmpty()) return;
+
+        double scale = bucketScale(zoom);
+        String key = scale + ":" + text;
+        Label label = labels.get(key);
+        if (label == null && rendersLeft > 0) {
+            label = render(text, scale);
+            labels.put(key, label);
+            rendersLeft--;
+        }
+
+        if (label == null) {
+            gc.setFill(Color.WHITE);
+            gc.fillText(text, x, baselineY);
+            return;
+        }
+        gc.drawImage(label.image, x + label.offsetX / scale, baselineY - label.baseline / scale,
+                     label.image.getWidth() / scale, label.image.getHeight() / scale);
+    }
+
+    private Label render(String text, double scale) {
+        Font base = Font.getDefault();
+        Font font = Font.font(base.getFamily(), base.getSize() * scale);
+
+        Text layout = new Text(text);
+        layout.setFont(font);
+        Bounds bounds = layout.getLayoutBounds();
+        int width = Math.max(1, (int) Math.ceil(bounds.getWidth()));
+        int height = Math.max(1, (int) Math.ceil(bounds.getHeight()));
+
+        Canvas canvas = new Canvas(width, height);
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.setFont(font);
+        gc.setFill(Color.WHITE);
+        gc.fillText(text, -bounds.getMinX(), -bounds.getMinY());
+
+        WritableImage image = canvas.snapshot(parameters, null);
+        return new Label(image, bounds.getMinX(), -bounds.getMinY());
+    }
+
+    private static class Label {
+        final WritableImage image;
+        final double offsetX;
+        final double baseline;
+
+        Label(WritableImage image, double offsetX, double baseline) {
+            this.image = image;
+            this.offsetX = offsetX;
+            this.baseline = baseline;
+        }
+    }
+}
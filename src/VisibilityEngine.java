@@ -0,0 +1,218 @@
+package src;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+public class VisibilityEngine {
+    private static final double DEFAULT_RANGE = 60.0;
+    private static final double SEGMENT_CELL_SIZE = 2.0;
+    private static final double ANGLE_EPSILON = 1e-4;
+    private static final int BASE_RAYS = 64;
+    private static final int CACHE_SIZE = 256;
+
+    private final double range;
+    private final SpatialGrid segmentIndex = new SpatialGrid(SEGMENT_CELL_SIZE);
+    private double[] x1s = new double[0];
+    private double[] y1s = new double[0];
+    private double[] x2s = new double[0];
+    private double[] y2s = new double[0];
+    private int[] testedStamp = new int[0];
+    private int segmentCount = 0;
+    private long wallVersion = Long.MIN_VALUE;
+
+    private final Map<Long, double[]> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, double[]> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private double[] angles = new double[BASE_RAYS];
+    private int angleCount;
+    private final IntConsumer endpointCollector = this::collectEndpointAngles;
+    private final IntConsumer segmentTester = this::testSegment;
+    private double viewerX, viewerY;
+    private double rayDx, rayDy;
+    private double bestDistance;
+    private int rayStamp = 0;
+
+    public VisibilityEngine() {
+        this(DEFAULT_RANGE);
+    }
+
+    public VisibilityEngine(double range) {
+        this.range = range;
+    }
+
+    public void setSegments(List<Wall.WallSegment> segments, long version) {
+        if (version == wallVersion) return;
+
+        wallVersion = version;
+        cache.clear();
+        segmentIndex.clear();
+
+        segmentCount = segments.size();
+        x1s = new double[segmentCount];
+        y1s = new double[segmentCount];
+        x2s = new double[segmentCount];
+        y2s = new double[segmentCount];
+        testedStamp = new int[segmentCount];
+        rayStamp = 0;
+
+        for (int i = 0; i < segmentCount; i++) {
+            Wall.WallSegment segment = segments.get(i);
+            x1s[i] = segment.x1;
+            y1s[i] = segment.y1;
+            x2s[i] = segment.x2;
+            y2s[i] = segment.y2;
+            segmentIndex.insert(i, Math.min(segment.x1, segment.x2), Math.min(segment.y1, segment.y2),
+                                   Math.max(segment.x1, segment.x2), Math.max(segment.y1, segment.y2));
+        }
+    }
+
+    public long getWallVersion() {
+        return wallVersion;
+    }
+
+    public double getRange() {
+        return range;
+    }
+
+    public double[] getVisibility(int cellX, int cellY) {
+        long key = ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+        double[] polygon = cache.get(key);
+        if (polygon == null) {
+            polygon = computeVisibility(cellX + 0.5, cellY + 0.5);
+            cache.put(key, polygon);
+        }
+        return polygon;
+    }
+
+    public double[] computeVisibility(double x, double y) {
+        viewerX = x;
+        viewerY = y;
+
+        angleCount = 0;
+        for (int i = 0; i < BASE_RAYS; i++) {
+            addAngle(-Math.PI + 2 * Math.PI * i / BASE_RAYS);
+        }
+        segmentIndex.query(x - range, y - range, x + range, y + range, endpointCollector);
+        Arrays.sort(angles, 0, angleCount);
+
+        double[] polygon = new double[angleCount * 2];
+        int size = 0;
+        double lastAngle = Double.NaN;
+        for (int i = 0; i < angleCount; i++) {
+            double angle = angles[i];
+            if (angle - lastAngle < 1e-9) continue;
+            lastAngle = angle;
+
+            double dx = Math.cos(angle);
+            double dy = Math.sin(angle);
+            double distance = castRay(dx, dy, range);
+            polygon[size++] = x + dx * distance;
+            polygon[size++] = y + dy * distance;
+        }
+        return Arrays.copyOf(polygon, size);
+    }
+
+    public double castRay(double fromX, double fromY, double toX, double toY) {
+        double dx = toX - fromX;
+        double dy = toY - fromY;
+        double length = Math.sqrt(dx * dx + dy * dy);
+        if (length < 1e-9) return 0;
+
+        viewerX = fromX;
+        viewerY = fromY;
+        return castRay(dx / length, dy / length, length);
+    }
+
+    public boolean hasLineOfSight(double fromX, double fromY, double toX, double toY) {
+        double dx = toX - fromX;
+        double dy = toY - fromY;
+        double length = Math.sqrt(dx * dx + dy * dy);
+        return castRay(fromX, fromY, toX, toY) >= length - 1e-6;
+    }
+
+    private double castRay(double dx, double dy, double maxDistance) {
+        rayDx = dx;
+        rayDy = dy;
+        bestDistance = maxDistance;
+        if (++rayStamp == Integer.MAX_VALUE) {
+            Arrays.fill(testedStamp, 0);
+            rayStamp = 1;
+        }
+
+        segmentIndex.forEachOversized(segmentTester);
+
+        double cellSize = segmentIndex.getCellSize();
+        int cellX = (int) Math.floor(viewerX / cellSize);
+        int cellY = (int) Math.floor(viewerY / cellSize);
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+        double tMaxX = Math.abs(dx) < 1e-12 ? Double.MAX_VALUE
+                : ((cellX + (dx > 0 ? 1 : 0)) * cellSize - viewerX) / dx;
+        double tMaxY = Math.abs(dy) < 1e-12 ? Double.MAX_VALUE
+                : ((cellY + (dy > 0 ? 1 : 0)) * cellSize - viewerY) / dy;
+        double tDeltaX = Math.abs(dx) < 1e-12 ? Double.MAX_VALUE : cellSize / Math.abs(dx);
+        double tDeltaY = Math.abs(dy) < 1e-12 ? Double.MAX_VALUE : cellSize / Math.abs(dy);
+
+        while (true) {
+            segmentIndex.forEachInCell(cellX, cellY, segmentTester);
+
+            double tExit = Math.min(tMaxX, tMaxY);
+            if (bestDistance <= tExit || tExit > maxDistance) break;
+
+            if (tMaxX < tMaxY) {
+                cellX += stepX;
+                tMaxX += tDeltaX;
+            } else {
+                cellY += stepY;
+                tMaxY += tDeltaY;
+            }
+        }
+        return bestDistance;
+    }
+
+    private void testSegment(int id) {
+        if (testedStamp[id] == rayStamp) return;
+        testedStamp[id] = rayStamp;
+
+        double ex = x2s[id] - x1s[id];
+        double ey = y2s[id] - y1s[id];
+        double denom = rayDx * ey - rayDy * ex;
+        if (Math.abs(denom) < 1e-12) return;
+
+        double wx = x1s[id] - viewerX;
+        double wy = y1s[id] - viewerY;
+        double t = (wx * ey - wy * ex) / denom;
+        double u = (wx * rayDy - wy * rayDx) / denom;
+        if (t >= 0 && u >= 0 && u <= 1 && t < bestDistance) {
+            bestDistance = t;
+        }
+    }
+
+    private void collectEndpointAngles(int id) {
+        addEndpointAngles(x1s[id] - viewerX, y1s[id] - viewerY);
+        addEndpointAngles(x2s[id] - viewerX, y2s[id] - viewerY);
+    }
+
+    private void addEndpointAngles(double dx, double dy) {
+        if (dx * dx + dy * dy > range * range) return;
+
+        double angle = Math.atan2(dy, dx);
+        addAngle(angle - ANGLE_EPSILON);
+        addAngle(angle);
+        addAngle(angle + ANGLE_EPSILON);
+    }
+
+    private void addAngle(double angle) {
+        if (angleCount == angles.length) {
+            angles = Arrays.copyOf(angles, angleCount * 2);
+        }
+        angles[angleCount++] = angle;
+    }
+}
@@ -1,11 +1,18 @@
 package src;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.operation.union.CascadedPolygonUnion;
 
 public class Wall {
+    static final double CLOSE_DISTANCE = 1.0;
+    static final double CONNECTIVITY_CELL_SIZE = 4.0;
+    private static final int PARALLEL_UNION_THRESHOLD = 8;
+
     private double x, y;
     private double width, height;
     
@@ -44,6 +51,32 @@ public class Wall {
                 getTop() >= other.getBottom());
     }
 
+    public List<Wall> subtract(Wall area) {
+        List<Wall> remainders = new ArrayList<>();
+        if (!overlaps(area)) {
+            remainders.add(this);
+            return remainders;
+        }
+
+        double innerTop = Math.max(getTop(), area.getTop());
+        double innerBottom = Math.min(getBottom(), area.getBottom());
+
+        if (area.getTop() > getTop()) {
+            remainders.add(new Wall(getLeft(), getTop(), width, area.getTop() - getTop()));
+        }
+        if (area.getBottom() < getBottom()) {
+            remainders.add(new Wall(getLeft(), area.getBottom(), width, getBottom() - area.getBottom()));
+        }
+        if (area.getLeft() > getLeft()) {
+            remainders.add(new Wall(getLeft(), innerTop, area.getLeft() - getLeft(), innerBottom - innerTop));
+        }
+        if (area.getRight() < getRight()) {
+            remainders.add(new Wall(area.getRight(), innerTop, getRight() - area.getRight(), innerBottom - innerTop));
+        }
+        
+        return remainders;
+    }
+
     public boolean touches(Wall other) {
         return overlaps(other) || isAdjacent(other);
     }
@@ -60,13 +93,16 @@ public class Wall {
     }
 
     public Polygon toJtsPolygon() {
-        GeometryFactory gf = new GeometryFactory();
+        return toJtsPolygon(new GeometryFactory(), getLeft(), getTop(), getRight(), getBottom());
+    }
+
+    static Polygon toJtsPolygon(GeometryFactory gf, double left, double top, double right, double bottom) {
         Coordinate[] coords = new Coordinate[5];
-        coords[0] = new Coordinate(getLeft(), getTop());
-        coords[1] = new Coordinate(getRight(), getTop());
-        coords[2] = new Coordinate(getRight(), getBottom());
-        coords[3] = new Coordinate(getLeft(), getBottom());
-        coords[4] = new Coordinate(getLeft(), getTop());
+        coords[0] = new Coordinate(left, top);
+        coords[1] = new Coordinate(right, top);
+        coords[2] = new Coordinate(right, bottom);
+        coords[3] = new Coordinate(left, bottom);
+        coords[4] = new Coordinate(left, top);
         return gf.createPolygon(gf.createLinearRing(coords), null);
     }
 
@@ -157,116 +193,218 @@ public class Wall {
             return walls.get(0).getOutlineSegments();
         }
         
-        try {
-            List<List<Wall>> connectedComponents = findConnectedComponents(walls);
-            
-            List<WallSegment> allSegments = new ArrayList<>();
+        WallStore store = WallStore.fromWalls(walls);
+        List<WallSegment> allSegments = new ArrayList<>();
+        for (OutlinePath path : getComponentPaths(store, findConnectedComponents(store))) {
+            allSegments.addAll(path.toSegments());
+        }
+        return allSegments;
+    }
 
-            for (List<Wall> component : connectedComponents) {
-                if (component.size() == 1) {
-                    allSegments.addAll(component.get(0).getOutlineSegments());
-                }
-                else {
-                    List<Polygon> polygons = new ArrayList<>();
-                    for (Wall wall : component) {
-                        polygons.add(wall.toJtsPolygon());
-                    }
-                    
-                    GeometryFactory gf = new GeometryFactory();
-                    Geometry union = CascadedPolygonUnion.union(polygons);
+    public static List<OutlinePath> getComponentPaths(WallStore store, List<int[]> components) {
+        if (components.size() < PARALLEL_UNION_THRESHOLD) {
+            List<OutlinePath> paths = new ArrayList<>(components.size());
+            for (int[] component : components) {
+                paths.add(getComponentPath(store, component));
+            }
+            return paths;
+        }
 
-                    allSegments.addAll(extractOuterBoundary(union));
-                }
+        return components.parallelStream()
+                .map(component -> getComponentPath(store, component))
+                .collect(Collectors.toList());
+    }
+
+    public static OutlinePath getComponentPath(WallStore store, int[] component) {
+        if (component.length == 1) {
+            return new OutlinePath(List.of(toRing(store, component[0])));
+        }
+
+        try {
+            GeometryFactory gf = new GeometryFactory();
+            List<Polygon> polygons = new ArrayList<>(component.length);
+            for (int id : component) {
+                polygons.add(toJtsPolygon(gf, store.getLeft(id), store.getTop(id), store.getRight(id), store.getBottom(id)));
             }
-            
-            return allSegments;
-            
+
+            Geometry union = CascadedPolygonUnion.union(polygons);
+            return extractOutline(union);
+
         } catch (Exception e) {
             System.err.println("Error in JTS union: " + e.getMessage());
-            List<WallSegment> allSegments = new ArrayList<>();
-            for (Wall wall : walls) {
-                allSegments.addAll(wall.getOutlineSegments());
+            List<double[]> rings = new ArrayList<>();
+            for (int id : component) {
+                rings.add(toRing(store, id));
             }
-            return allSegments;
+            return new OutlinePath(rings);
         }
     }
 
-    private static List<List<Wall>> findConnectedComponents(List<Wall> walls) {
-        List<List<Wall>> components = new ArrayList<>();
-        boolean[] visited = new boolean[walls.size()];
+    private static double[] toRing(WallStore store, int id) {
+        double left = store.getLeft(id), top = store.getTop(id);
+        double right = store.getRight(id), bottom = store.getBottom(id);
+        return new double[] {
+            left, top,
+            right, top,
+            right, bottom,
+            left, bottom
+        };
+    }
+
+    static List<int[]> findConnectedComponents(WallStore store) {
+        SpatialGrid index = new SpatialGrid(CONNECTIVITY_CELL_SIZE);
+        store.forEach((id, x, y, width, height) -> index.insert(id, x, y, x + width, y + height));
+
+        List<int[]> components = new ArrayList<>();
+        boolean[] visited = new boolean[store.getIdLimit()];
+        int[] stack = new int[store.size()];
+        int[] stackSize = { 0 };
+        int[] component = new int[store.size()];
         
-        for (int i = 0; i < walls.size(); i++) {
-            if (!visited[i]) {
-                List<Wall> component = new ArrayList<>();
-                dfs(walls, i, visited, component);
-                components.add(component);
+        for (int start : store.getIds()) {
+            if (visited[start]) continue;
+
+            int componentSize = 0;
+            visited[start] = true;
+            stack[stackSize[0]++] = start;
+
+            while (stackSize[0] > 0) {
+                int current = stack[--stackSize[0]];
+                component[componentSize++] = current;
+
+                forEachClose(index, store, current, candidate -> {
+                    if (!visited[candidate]) {
+                        visited[candidate] = true;
+                        stack[stackSize[0]++] = candidate;
+                    }
+                });
             }
+            components.add(Arrays.copyOf(component, componentSize));
         }
         
         return components;
     }
 
-    private static void dfs(List<Wall> walls, int index, boolean[] visited, List<Wall> component) {
-        visited[index] = true;
-        component.add(walls.get(index));
+    static void forEachClose(SpatialGrid index, WallStore store, int id, IntConsumer consumer) {
+        double left = store.getLeft(id), top = store.getTop(id);
+        double right = store.getRight(id), bottom = store.getBottom(id);
+
+        index.query(left - CLOSE_DISTANCE, top - CLOSE_DISTANCE, right + CLOSE_DISTANCE, bottom + CLOSE_DISTANCE, candidate -> {
+            if (candidate != id && wallsAreClose(left, top, right, bottom,
+                    store.getLeft(candidate), store.getTop(candidate), store.getRight(candidate), store.getBottom(candidate))) {
+                consumer.accept(candidate);
+            }
+        });
+    }
+
+    private static boolean wallsAreClose(double left1, double top1, double right1, double bottom1,
+                                         double left2, double top2, double right2, double bottom2) {
+        double dx = Math.max(0, Math.max(left1 - right2, left2 - right1));
+        double dy = Math.max(0, Math.max(top1 - bottom2, top2 - bottom1));
+        return Math.sqrt(dx * dx + dy * dy) < CLOSE_DISTANCE;
+    }
+
+    private static OutlinePath extractOutline(Geometry geometry) {
+        List<double[]> rings = new ArrayList<>();
+        List<double[]> holes = new ArrayList<>();
         
-        for (int i = 0; i < walls.size(); i++) {
-            if (!visited[i] && wallsAreClose(walls.get(index), walls.get(i))) {
-                dfs(walls, i, visited, component);
+        for (int i = 0; i < geometry.getNumGeometries(); i++) {
+            Geometry geom = geometry.getGeometryN(i);
+            if (geom instanceof Polygon) {
+                Polygon polygon = (Polygon) geom;
+                double[] ring = collapseCollinear(polygon.getExteriorRing().getCoordinates());
+                if (ring.length >= 6) {
+                    rings.add(ring);
+                }
+                for (int h = 0; h < polygon.getNumInteriorRing(); h++) {
+                    double[] hole = collapseCollinear(polygon.getInteriorRingN(h).getCoordinates());
+                    if (hole.length >= 6) {
+                        holes.add(hole);
+                    }
+                }
             }
         }
+        
+        return new OutlinePath(rings, holes);
     }
 
-    private static boolean wallsAreClose(Wall wall1, Wall wall2) {
-        if (wall1.overlaps(wall2)) {
-            return true;
-        }
+    private static double[] collapseCollinear(Coordinate[] coords) {
+        int count = coords.length - 1;
+        double[] ring = new double[count * 2];
+        int size = 0;
 
-        if (wall1.isAdjacent(wall2)) {
-            return true;
+        for (int i = 0; i < count; i++) {
+            Coordinate prev = coords[(i + count - 1) % count];
+            Coordinate current = coords[i];
+            Coordinate next = coords[(i + 1) % count];
+
+            double cross = (current.x - prev.x) * (next.y - current.y) - (current.y - prev.y) * (next.x - current.x);
+            if (Math.abs(cross) < 1e-9) continue;
+
+            ring[size++] = current.x;
+            ring[size++] = current.y;
         }
 
-        double distance = getDistance(wall1, wall2);
-        return distance < 1.0;
+        return Arrays.copyOf(ring, size);
     }
 
-    private static double getDistance(Wall wall1, Wall wall2) {
-        double dx = Math.max(0, Math.max(wall1.getLeft() - wall2.getRight(), wall2.getLeft() - wall1.getRight()));
-        double dy = Math.max(0, Math.max(wall1.getTop() - wall2.getBottom(), wall2.getTop() - wall1.getBottom()));
-        return Math.sqrt(dx * dx + dy * dy);
-    }
+    public static class OutlinePath {
+        private final List<double[]> rings;
+        private final List<double[]> holes;
+        private double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        private double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
 
-    private static List<WallSegment> extractOuterBoundary(Geometry geometry) {
-        List<WallSegment> segments = new ArrayList<>();
-        
-        if (geometry instanceof Polygon) {
-            Polygon polygon = (Polygon) geometry;
-            Coordinate[] coords = polygon.getExteriorRing().getCoordinates();
-            
-            for (int i = 0; i < coords.length - 1; i++) {
-                Coordinate c1 = coords[i];
-                Coordinate c2 = coords[i + 1];
-                segments.add(new WallSegment(c1.x, c1.y, c2.x, c2.y));
+        public OutlinePath(List<double[]> rings) {
+            this(rings, new ArrayList<>());
+        }
+
+        public OutlinePath(List<double[]> rings, List<double[]> holes) {
+            this.rings = rings;
+            this.holes = holes;
+            for (double[] ring : rings) {
+                for (int i = 0; i < ring.length; i += 2) {
+                    minX = Math.min(minX, ring[i]);
+                    maxX = Math.max(maxX, ring[i]);
+                    minY = Math.min(minY, ring[i + 1]);
+                    maxY = Math.max(maxY, ring[i + 1]);
+                }
             }
         }
-        else if (geometry instanceof MultiPolygon) {
-            MultiPolygon multiPoly = (MultiPolygon) geometry;
-            for (int i = 0; i < multiPoly.getNumGeometries(); i++) {
-                Geometry geom = multiPoly.getGeometryN(i);
-                if (geom instanceof Polygon) {
-                    Polygon polygon = (Polygon) geom;
-                    Coordinate[] coords = polygon.getExteriorRing().getCoordinates();
-                    
-                    for (int j = 0; j < coords.length - 1; j++) {
-                        Coordinate c1 = coords[j];
-                        Coordinate c2 = coords[j + 1];
-                        segments.add(new WallSegment(c1.x, c1.y, c2.x, c2.y));
-                    }
+
+        public List<double[]> getRings() { return rings; }
+        public List<double[]> getHoles() { return holes; }
+
+        public double getMinX() { return minX; }
+        public double getMinY() { return minY; }
+        public double getMaxX() { return maxX; }
+        public double getMaxY() { return maxY; }
+
+        public boolean intersects(double left, double top, double right, double bottom) {
+            return maxX >= left && minX <= right && maxY >= top && minY <= bottom;
+        }
+
+        public List<WallSegment> toSegments() {
+            List<WallSegment> segments = new ArrayList<>();
+            addRingSegments(rings, segments);
+            return segments;
+        }
+
+        public List<WallSegment> toBlockingSegments() {
+            List<WallSegment> segments = new ArrayList<>();
+            addRingSegments(rings, segments);
+            addRingSegments(holes, segments);
+            return segments;
+        }
+
+        private static void addRingSegments(List<double[]> rings, List<WallSegment> segments) {
+            for (double[] ring : rings) {
+                int points = ring.length / 2;
+                for (int i = 0; i < points; i++) {
+                    int j = (i + 1) % points;
+                    segments.add(new WallSegment(ring[i * 2], ring[i * 2 + 1], ring[j * 2], ring[j * 2 + 1]));
                 }
             }
         }
-        
-        return segments;
     }
 
     public static class ComplexWall extends Wall {
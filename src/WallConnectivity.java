@@ -0,0 +1,235 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public class WallConnectivity {
+    private final WallStore store;
+    private final SpatialGrid index = new SpatialGrid(Wall.CONNECTIVITY_CELL_SIZE);
+
+    private int[] parent = new int[16];
+    private int[] componentSize = new int[16];
+    private int[] nextMember = new int[16];
+    private int componentCount = 0;
+
+    private final Set<Integer> changedComponents = new LinkedHashSet<>();
+    private final Set<Integer> removedComponents = new LinkedHashSet<>();
+    private int generation = 0;
+    private long version = 0;
+
+    public WallConnectivity(WallStore store) {
+        this.store = store;
+    }
+
+    public void rebuild() {
+        clear();
+        for (int id : store.getIds()) {
+            addWall(id);
+        }
+    }
+
+    public void clear() {
+        index.clear();
+        componentCount = 0;
+        changedComponents.clear();
+        removedComponents.clear();
+        generation++;
+        version++;
+    }
+
+    public void addWall(int id) {
+        if (index.contains(id) || !store.contains(id)) return;
+
+        ensureCapacity(id + 1);
+        parent[id] = id;
+        componentSize[id] = 1;
+        nextMember[id] = id;
+        componentCount++;
+        changedComponents.add(id);
+
+        Wall.forEachClose(index, store, id, candidate -> union(id, candidate));
+        index.insert(id, store.getLeft(id), store.getTop(id), store.getRight(id), store.getBottom(id));
+        version++;
+    }
+
+    public void removeWalls(int[] ids) {
+        List<int[]> groups = new ArrayList<>();
+        Set<Integer> affectedRoots = new HashSet<>();
+        for (int id : ids) {
+            if (!index.contains(id)) continue;
+
+            int root = find(id);
+            if (affectedRoots.add(root)) {
+                groups.add(collectMembers(root));
+                markRemoved(root);
+                componentCount--;
+            }
+        }
+        for (int id : ids) {
+            index.remove(id);
+        }
+        if (groups.isEmpty()) return;
+
+        for (int[] group : groups) {
+            for (int member : group) {
+                if (!index.contains(member)) continue;
+                parent[member] = member;
+                componentSize[member] = 1;
+                nextMember[member] = member;
+                componentCount++;
+            }
+        }
+        for (int[] group : groups) {
+            for (int member : group) {
+                if (!index.contains(member)) continue;
+                Wall.forEachClose(index, store, member, candidate -> union(member, candidate));
+            }
+        }
+        for (int[] group : groups) {
+            for (int member : group) {
+                if (index.contains(member) && find(member) == member) {
+                    markChanged(member);
+                }
+            }
+        }
+        version++;
+    }
+
+    public int[] findOverlapping(Wall area) {
+        int[][] found = { new int[8] };
+        int[] count = { 0 };
+        index.query(area.getLeft(), area.getTop(), area.getRight(), area.getBottom(), id -> {
+            if (store.getRight(id) > area.getLeft() && store.getLeft(id) < area.getRight() &&
+                store.getBottom(id) > area.getTop() && store.getTop(id) < area.getBottom()) {
+                if (count[0] == found[0].length) {
+                    found[0] = Arrays.copyOf(found[0], count[0] * 2);
+                }
+                found[0][count[0]++] = id;
+            }
+        });
+        return Arrays.copyOf(found[0], count[0]);
+    }
+
+    public boolean contains(int id) {
+        return index.contains(id);
+    }
+
+    public int getComponentOf(int id) {
+        return index.contains(id) ? find(id) : -1;
+    }
+
+    public int[] getComponentWalls(int root) {
+        if (!index.contains(root) || find(root) != root) return new int[0];
+        return collectMembers(root);
+    }
+
+    public List<Integer> getComponentRoots() {
+        List<Integer> roots = new ArrayList<>(componentCount);
+        for (int id : store.getIds()) {
+            if (index.contains(id) && find(id) == id) {
+                roots.add(id);
+            }
+        }
+        return roots;
+    }
+
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    public WallStore getStore() {
+        return store;
+    }
+
+    public boolean hasChanges() {
+        return !changedComponents.isEmpty() || !removedComponents.isEmpty();
+    }
+
+    public Set<Integer> drainChangedComponents() {
+        Set<Integer> changed = new LinkedHashSet<>(changedComponents);
+        changedComponents.clear();
+        return changed;
+    }
+
+    public Set<Integer> drainRemovedComponents() {
+        Set<Integer> removed = new LinkedHashSet<>(removedComponents);
+        removedComponents.clear();
+        return removed;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    private int[] collectMembers(int root) {
+        int[] members = new int[componentSize[root]];
+        int count = 0;
+        int member = root;
+        do {
+            members[count++] = member;
+            member = nextMember[member];
+        } while (member != root);
+        return members;
+    }
+
+    private int find(int id) {
+        int root = id;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        while (parent[id] != root) {
+            int next = parent[id];
+            parent[id] = root;
+            id = next;
+        }
+        return root;
+    }
+
+    private void union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) return;
+
+        if (componentSize[rootA] < componentSize[rootB]) {
+            int swap = rootA;
+            rootA = rootB;
+            rootB = swap;
+        }
+
+        parent[rootB] = rootA;
+        componentSize[rootA] += componentSize[rootB];
+        int next = nextMember[rootA];
+        nextMember[rootA] = nextMember[rootB];
+        nextMember[rootB] = next;
+        componentCount--;
+        markRemoved(rootB);
+        markChanged(rootA);
+    }
+
+    private void markChanged(int root) {
+        removedComponents.remove(root);
+        changedComponents.add(root);
+    }
+
+    private void markRemoved(int root) {
+        changedComponents.remove(root);
+        removedComponents.add(root);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= parent.length) return;
+
+        int newLength = Math.max(capacity, parent.length * 2);
+        parent = Arrays.copyOf(parent, newLength);
+        componentSize = Arrays.copyOf(componentSize, newLength);
+        nextMember = Arrays.copyOf(nextMember, newLength);
+    }
+}
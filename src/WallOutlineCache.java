@@ -0,0 +1,77 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class WallOutlineCache {
+    private final Map<Integer, Wall.OutlinePath> outlines = new TreeMap<>();
+    private List<Wall.OutlinePath> paths = new ArrayList<>();
+    private List<Wall.WallSegment> segments = null;
+    private List<Wall.WallSegment> blockingSegments = null;
+    private int generation = -1;
+
+    public List<Wall.OutlinePath> getPaths(WallConnectivity connectivity) {
+        update(connectivity);
+        return paths;
+    }
+
+    public List<Wall.WallSegment> getSegments(WallConnectivity connectivity) {
+        update(connectivity);
+        if (segments == null) {
+            List<Wall.WallSegment> allSegments = new ArrayList<>();
+            for (Wall.OutlinePath path : paths) {
+                allSegments.addAll(path.toSegments());
+            }
+            segments = allSegments;
+        }
+        return segments;
+    }
+
+    public List<Wall.WallSegment> getBlockingSegments(WallConnectivity connectivity) {
+        update(connectivity);
+        if (blockingSegments == null) {
+            List<Wall.WallSegment> allSegments = new ArrayList<>();
+            for (Wall.OutlinePath path : paths) {
+                allSegments.addAll(path.toBlockingSegments());
+            }
+            blockingSegments = allSegments;
+        }
+        return blockingSegments;
+    }
+
+    public boolean update(WallConnectivity connectivity) {
+        boolean reset = connectivity.getGeneration() != generation;
+        if (reset) {
+            outlines.clear();
+            generation = connectivity.getGeneration();
+        }
+        if (!reset && !connectivity.hasChanges()) {
+            return false;
+        }
+
+        for (int root : connectivity.drainRemovedComponents()) {
+            outlines.remove(root);
+        }
+        List<Integer> changedRoots = new ArrayList<>(connectivity.drainChangedComponents());
+        List<int[]> changedWalls = new ArrayList<>(changedRoots.size());
+        for (int root : changedRoots) {
+            changedWalls.add(connectivity.getComponentWalls(root));
+        }
+
+        List<Wall.OutlinePath> changedPaths = Wall.getComponentPaths(connectivity.getStore(), changedWalls);
+        for (int i = 0; i < changedRoots.size(); i++) {
+            outlines.put(changedRoots.get(i), changedPaths.get(i));
+        }
+
+        paths = new ArrayList<>(outlines.values());
+        segments = null;
+        blockingSegments = null;
+        return true;
+    }
+
+    public int getComponentCount() {
+        return outlines.size();
+    }
+}
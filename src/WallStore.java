@@ -0,0 +1,222 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class WallStore {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MIN_COMPACT_SLOTS = 64;
+
+    private double[] xs = new double[INITIAL_CAPACITY];
+    private double[] ys = new double[INITIAL_CAPACITY];
+    private double[] widths = new double[INITIAL_CAPACITY];
+    private double[] heights = new double[INITIAL_CAPACITY];
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int[] slotOfId = new int[INITIAL_CAPACITY];
+
+    private int slotCount = 0;
+    private int liveCount = 0;
+    private int nextId = 0;
+    private long version = 0;
+
+    public interface Visitor {
+        void visit(int id, double x, double y, double width, double height);
+    }
+
+    public WallStore() {
+        Arrays.fill(slotOfId, -1);
+    }
+
+    public static WallStore fromWalls(List<Wall> walls) {
+        WallStore store = new WallStore();
+        if (walls != null) {
+            for (Wall wall : walls) {
+                store.add(wall);
+            }
+        }
+        return store;
+    }
+
+    public int add(Wall wall) {
+        return add(wall.getX(), wall.getY(), wall.getWidth(), wall.getHeight());
+    }
+
+    public int add(double x, double y, double width, double height) {
+        int id = nextId++;
+        restore(id, x, y, width, height);
+        return id;
+    }
+
+    public void restore(int id, double x, double y, double width, double height) {
+        ensureIdCapacity(id + 1);
+        if (slotOfId[id] >= 0) {
+            remove(id);
+        }
+        ensureSlotCapacity(slotCount + 1);
+
+        int slot = slotCount++;
+        xs[slot] = x;
+        ys[slot] = y;
+        widths[slot] = width;
+        heights[slot] = height;
+        ids[slot] = id;
+        slotOfId[id] = slot;
+        liveCount++;
+        nextId = Math.max(nextId, id + 1);
+        version++;
+    }
+
+    public boolean remove(int id) {
+        if (!contains(id)) return false;
+
+        int slot = slotOfId[id];
+        ids[slot] = -1;
+        slotOfId[id] = -1;
+        liveCount--;
+        version++;
+
+        if (slotCount >= MIN_COMPACT_SLOTS && slotCount - liveCount > liveCount) {
+            compact();
+        }
+        return true;
+    }
+
+    public void compact() {
+        int target = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            int id = ids[slot];
+            if (id < 0) continue;
+
+            if (target != slot) {
+                xs[target] = xs[slot];
+                ys[target] = ys[slot];
+                widths[target] = widths[slot];
+                heights[target] = heights[slot];
+                ids[target] = id;
+                slotOfId[id] = target;
+            }
+            target++;
+        }
+        slotCount = target;
+    }
+
+    public void clear() {
+        Arrays.fill(slotOfId, -1);
+        slotCount = 0;
+        liveCount = 0;
+        version++;
+    }
+
+    public WallStore copy() {
+        WallStore copy = new WallStore();
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    public void copyFrom(WallStore other) {
+        int capacity = Math.max(other.liveCount, INITIAL_CAPACITY);
+        double[] newXs = new double[capacity];
+        double[] newYs = new double[capacity];
+        double[] newWidths = new double[capacity];
+        double[] newHeights = new double[capacity];
+        int[] newIds = new int[capacity];
+        int[] newSlotOfId = new int[Math.max(other.slotOfId.length, INITIAL_CAPACITY)];
+        Arrays.fill(newSlotOfId, -1);
+
+        int target = 0;
+        for (int slot = 0; slot < other.slotCount; slot++) {
+            int id = other.ids[slot];
+            if (id < 0) continue;
+
+            newXs[target] = other.xs[slot];
+            newYs[target] = other.ys[slot];
+            newWidths[target] = other.widths[slot];
+            newHeights[target] = other.heights[slot];
+            newIds[target] = id;
+            newSlotOfId[id] = target;
+            target++;
+        }
+
+        xs = newXs;
+        ys = newYs;
+        widths = newWidths;
+        heights = newHeights;
+        ids = newIds;
+        slotOfId = newSlotOfId;
+        slotCount = target;
+        liveCount = target;
+        nextId = Math.max(nextId, other.nextId);
+        version++;
+    }
+
+    public boolean contains(int id) {
+        return id >= 0 && id < slotOfId.length && slotOfId[id] >= 0;
+    }
+
+    public int size() { return liveCount; }
+    public boolean isEmpty() { return liveCount == 0; }
+    public int getIdLimit() { return nextId; }
+    public long getVersion() { return version; }
+
+    public int getSlotCount() { return slotCount; }
+    public int getIdAt(int slot) { return ids[slot]; }
+    public double getXAt(int slot) { return xs[slot]; }
+    public double getYAt(int slot) { return ys[slot]; }
+    public double getWidthAt(int slot) { return widths[slot]; }
+    public double getHeightAt(int slot) { return heights[slot]; }
+
+    public double getLeft(int id) { return xs[slotOfId[id]]; }
+    public double getTop(int id) { return ys[slotOfId[id]]; }
+    public double getRight(int id) { int slot = slotOfId[id]; return xs[slot] + widths[slot]; }
+    public double getBottom(int id) { int slot = slotOfId[id]; return ys[slot] + heights[slot]; }
+
+    public void forEach(Visitor visitor) {
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (ids[slot] >= 0) {
+                visitor.visit(ids[slot], xs[slot], ys[slot], widths[slot], heights[slot]);
+            }
+        }
+    }
+
+    public int[] getIds() {
+        int[] result = new int[liveCount];
+        int count = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (ids[slot] >= 0) {
+                result[count++] = ids[slot];
+            }
+        }
+        return result;
+    }
+
+    public Wall toWall(int id) {
+        int slot = slotOfId[id];
+        return new Wall(xs[slot], ys[slot], widths[slot], heights[slot]);
+    }
+
+    public List<Wall> toWalls() {
+        List<Wall> walls = new ArrayList<>(liveCount);
+        forEach((id, x, y, width, height) -> walls.add(new Wall(x, y, width, height)));
+        return walls;
+    }
+
+    private void ensureSlotCapacity(int capacity) {
+        if (capacity <= xs.length) return;
+
+        int newLength = Math.max(capacity, xs.length * 2);
+        xs = Arrays.copyOf(xs, newLength);
+        ys = Arrays.copyOf(ys, newLength);
+        widths = Arrays.copyOf(widths, newLength);
+        heights = Arrays.copyOf(heights, newLength);
+        ids = Arrays.copyOf(ids, newLength);
+    }
+
+    private void ensureIdCapacity(int capacity) {
+        if (capacity <= slotOfId.length) return;
+
+        int oldLength = slotOfId.length;
+        slotOfId = Arrays.copyOf(slotOfId, Math.max(capacity, oldLength * 2));
+        Arrays.fill(slotOfId, oldLength, slotOfId.length, -1);
+    }
+}